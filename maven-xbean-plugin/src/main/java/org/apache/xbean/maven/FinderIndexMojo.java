@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xbean.maven;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.apache.xbean.finder.index.ClassDefIndex;
+
+/**
+ * Scans the compiled classes and writes the index the AnnotationFinder
+ * reads instead of the bytecode when the classes are packaged in a jar.
+ *
+ * @version $Rev$ $Date$
+ * @goal finder-index
+ * @description Creates the xbean-finder index of the compiled classes
+ * @phase process-classes
+ */
+public class FinderIndexMojo extends AbstractMojo {
+
+    /**
+     * @parameter expression="${project.build.outputDirectory}"
+     * @required
+     */
+    private File classesDir;
+
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        getLog().debug( "classesDir[" + classesDir + "]" );
+
+        if (!classesDir.isDirectory()) {
+            getLog().info("No classes to index");
+            return;
+        }
+
+        final File index = new File(classesDir, ClassDefIndex.RESOURCE);
+        index.getParentFile().mkdirs();
+
+        final URLClassLoader loader;
+        try {
+            loader = new URLClassLoader(new URL[]{classesDir.toURI().toURL()}, null);
+        } catch (MalformedURLException e) {
+            throw new MojoExecutionException("Error during setting up classpath", e);
+        }
+
+        try {
+            final OutputStream out = new BufferedOutputStream(new FileOutputStream(index));
+            try {
+                final int classes = ClassDefIndex.write(new FileArchive(loader, classesDir), out);
+                getLog().info("Indexed " + classes + " classes in " + index);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            index.delete();
+            throw new MojoExecutionException("Could not write the finder index " + index + ": " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            index.delete();
+            throw new MojoExecutionException("Could not write the finder index " + index + ": " + e, e);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.benchmark;
+
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.CompositeArchive;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Classes generated for the benchmarks, written once per size under the directory
+ * given by the xbean.finder.fixtures system property (java.io.tmpdir by default).
+ * <p/>
+ * The classes are split in packages of 100 classes and in hierarchies of 10 classes
+ * extending the first one of their group.  One class in 3 implements the Component
+ * interface, one in 5 is annotated with @Entity, one in 7 with @Service, and one in
+ * 4 has an @Inject field and an @Inject method.  One class in 50 implements Runnable
+ * and is listed under META-INF/java.lang.Runnable/ for the ResourceFinder.
+ * <p/>
+ * The same classes are written to a directory, a single jar and ten smaller jars.
+ *
+ * @version $Rev$ $Date$
+ */
+public class Fixture {
+
+    public static final String PACKAGE = "fixture";
+    public static final String ENTITY = PACKAGE + ".Entity";
+    public static final String SERVICE = PACKAGE + ".Service";
+    public static final String INJECT = PACKAGE + ".Inject";
+    public static final String COMPONENT = PACKAGE + ".Component";
+
+    private static final String SERVICES = "META-INF/java.lang.Runnable/";
+    private static final int PARTS = 10;
+
+    private final int size;
+    private final File classes;
+    private final File jar;
+    private final List<File> parts = new ArrayList<File>();
+
+    public Fixture(int size) throws IOException {
+        this.size = size;
+
+        final File base = new File(System.getProperty("xbean.finder.fixtures", System.getProperty("java.io.tmpdir")), "xbean-finder-fixtures");
+        final File dir = new File(base, Integer.toString(size));
+        this.classes = new File(dir, "classes");
+        this.jar = new File(dir, "fixture.jar");
+        for (int i = 0; i < PARTS; i++) {
+            parts.add(new File(dir, "part-" + i + ".jar"));
+        }
+
+        final File done = new File(dir, "done");
+        if (!done.exists()) {
+            generate();
+            if (!done.createNewFile()) throw new IOException("Can't create " + done);
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public static String className(int i) {
+        return PACKAGE + ".p" + (i / 100) + ".Class" + i;
+    }
+
+    /**
+     * @return a class loader for the classes of the fixture, in a directory or in jars
+     */
+    public ClassLoader loader(String type) throws IOException {
+        final List<URL> urls = new ArrayList<URL>();
+        if ("file".equals(type)) {
+            urls.add(classes.toURI().toURL());
+        } else if ("jar".equals(type)) {
+            urls.add(jar.toURI().toURL());
+        } else {
+            for (File part : parts) {
+                urls.add(part.toURI().toURL());
+            }
+        }
+        return new URLClassLoader(urls.toArray(new URL[urls.size()]), Fixture.class.getClassLoader());
+    }
+
+    /**
+     * @param type file, jar or composite
+     */
+    public Archive archive(String type, ClassLoader loader) throws IOException {
+        if ("file".equals(type)) {
+            return new FileArchive(loader, classes);
+        } else if ("jar".equals(type)) {
+            return new JarArchive(loader, jar.toURI().toURL());
+        } else if ("composite".equals(type)) {
+            final List<Archive> archives = new ArrayList<Archive>();
+            for (File part : parts) {
+                archives.add(new JarArchive(loader, part.toURI().toURL()));
+            }
+            return new CompositeArchive(archives);
+        }
+        throw new IllegalArgumentException("unknown archive type: " + type);
+    }
+
+    private void generate() throws IOException {
+        if (!jar.getParentFile().isDirectory() && !jar.getParentFile().mkdirs()) {
+            throw new IOException("Can't create " + jar.getParentFile());
+        }
+
+        final JarOutputStream all = new JarOutputStream(new FileOutputStream(jar));
+        final List<JarOutputStream> jars = new ArrayList<JarOutputStream>();
+        for (File part : parts) {
+            jars.add(new JarOutputStream(new FileOutputStream(part)));
+        }
+
+        try {
+            final List<JarOutputStream> everywhere = new ArrayList<JarOutputStream>(jars);
+            everywhere.add(all);
+
+            // ResourceFinder lists the entries of the directory it finds with getResources
+            for (JarOutputStream out : everywhere) {
+                out.putNextEntry(new JarEntry("META-INF/"));
+                out.closeEntry();
+                out.putNextEntry(new JarEntry(SERVICES));
+                out.closeEntry();
+            }
+
+            for (String annotation : new String[]{ENTITY, SERVICE, INJECT}) {
+                write(annotation.replace('.', '/') + ".class", annotation(annotation), everywhere);
+            }
+            write(COMPONENT.replace('.', '/') + ".class", component(), everywhere);
+
+            for (int i = 0; i < size; i++) {
+                final String name = className(i);
+                final List<JarOutputStream> outs = new ArrayList<JarOutputStream>();
+                outs.add(all);
+                outs.add(jars.get(i % PARTS));
+                write(name.replace('.', '/') + ".class", type(i), outs);
+
+                if (i % 50 == 0) {
+                    write(SERVICES + name, name.getBytes("UTF-8"), outs);
+                }
+            }
+        } finally {
+            all.close();
+            for (JarOutputStream out : jars) {
+                out.close();
+            }
+        }
+    }
+
+    private void write(String path, byte[] bytes, List<JarOutputStream> jars) throws IOException {
+        final File file = new File(classes, path);
+        if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+            throw new IOException("Can't create " + file.getParentFile());
+        }
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+
+        for (JarOutputStream jar : jars) {
+            jar.putNextEntry(new JarEntry(path));
+            jar.write(bytes);
+            jar.closeEntry();
+        }
+    }
+
+    private static String internal(String className) {
+        return className.replace('.', '/');
+    }
+
+    private static String descriptor(String className) {
+        return "L" + internal(className) + ";";
+    }
+
+    private static byte[] annotation(String name) {
+        final ClassWriter cw = new ClassWriter(0);
+        cw.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE | Opcodes.ACC_ANNOTATION,
+                internal(name), null, "java/lang/Object", new String[]{"java/lang/annotation/Annotation"});
+
+        final AnnotationVisitor retention = cw.visitAnnotation("Ljava/lang/annotation/Retention;", true);
+        retention.visitEnum("value", "Ljava/lang/annotation/RetentionPolicy;", "RUNTIME");
+        retention.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static byte[] component() {
+        final ClassWriter cw = new ClassWriter(0);
+        cw.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE,
+                internal(COMPONENT), null, "java/lang/Object", null);
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static byte[] type(int i) {
+        final String superName = (i % 10 == 0) ? "java/lang/Object" : internal(className(i - i % 10));
+
+        final List<String> interfaces = new ArrayList<String>();
+        if (i % 3 == 0) interfaces.add(internal(COMPONENT));
+        if (i % 50 == 0) interfaces.add("java/lang/Runnable");
+
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, internal(className(i)), null, superName,
+                interfaces.toArray(new String[interfaces.size()]));
+
+        if (i % 5 == 0) cw.visitAnnotation(descriptor(ENTITY), true).visitEnd();
+        if (i % 7 == 0) cw.visitAnnotation(descriptor(SERVICE), true).visitEnd();
+
+        final boolean inject = i % 4 == 0;
+
+        for (int f = 0; f < 2; f++) {
+            final FieldVisitor fv = cw.visitField(Opcodes.ACC_PRIVATE, "field" + f, "Ljava/lang/String;", null, null);
+            if (inject && f == 0) fv.visitAnnotation(descriptor(INJECT), true).visitEnd();
+            fv.visitEnd();
+        }
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        for (int m = 0; m < 3; m++) {
+            mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "method" + m, "(Ljava/lang/String;)V", null, null);
+            if (inject && m == 0) mv.visitAnnotation(descriptor(INJECT), true).visitEnd();
+            mv.visitCode();
+            mv.visitInsn(Opcodes.RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        if (i % 50 == 0) {
+            mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V", null, null);
+            mv.visitCode();
+            mv.visitInsn(Opcodes.RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.benchmark;
+
+import org.apache.xbean.finder.AnnotationFinder;
+import org.apache.xbean.finder.archive.Archive;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of linking a freshly scanned AnnotationFinder.  The scan itself happens in an
+ * invocation level setup and is not measured.
+ *
+ * @version $Rev$ $Date$
+ */
+@State(Scope.Thread)
+public class LinkBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int classes;
+
+    private Archive archive;
+    private AnnotationFinder finder;
+
+    @Setup(Level.Trial)
+    public void setUpArchive() throws Exception {
+        final Fixture fixture = new Fixture(classes);
+        archive = fixture.archive("jar", fixture.loader("jar"));
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpFinder() {
+        finder = new AnnotationFinder(archive, false);
+    }
+
+    @Benchmark
+    public AnnotationFinder link() {
+        return finder.link();
+    }
+
+    @Benchmark
+    public AnnotationFinder enableFindImplementations() {
+        return finder.enableFindImplementations();
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.benchmark;
+
+import org.apache.xbean.finder.AnnotationFinder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Cost of the finder queries once the archive is scanned and linked.
+ *
+ * @version $Rev$ $Date$
+ */
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int classes;
+
+    private AnnotationFinder finder;
+    private Class<? extends Annotation> entity;
+    private Class<? extends Annotation> service;
+    private Class<? extends Annotation> inject;
+    private Class<?> component;
+    private Class<?> base;
+
+    @Setup
+    public void setUp() throws Exception {
+        final Fixture fixture = new Fixture(classes);
+        final ClassLoader loader = fixture.loader("jar");
+
+        finder = new AnnotationFinder(fixture.archive("jar", loader), false).link();
+
+        entity = loader.loadClass(Fixture.ENTITY).asSubclass(Annotation.class);
+        service = loader.loadClass(Fixture.SERVICE).asSubclass(Annotation.class);
+        inject = loader.loadClass(Fixture.INJECT).asSubclass(Annotation.class);
+        component = loader.loadClass(Fixture.COMPONENT);
+        base = loader.loadClass(Fixture.className(0));
+    }
+
+    @Benchmark
+    public List<Class<?>> findAnnotatedClasses() {
+        return finder.findAnnotatedClasses(entity);
+    }
+
+    @Benchmark
+    public List<Method> findAnnotatedMethods() {
+        return finder.findAnnotatedMethods(inject);
+    }
+
+    @Benchmark
+    public List<Field> findAnnotatedFields() {
+        return finder.findAnnotatedFields(inject);
+    }
+
+    @Benchmark
+    public List<?> findSubclasses() {
+        return finder.findSubclasses(base);
+    }
+
+    @Benchmark
+    public List<?> findImplementations() {
+        return finder.findImplementations(component);
+    }
+
+    @Benchmark
+    public List<String> query() {
+        return finder.query().annotatedWith(entity).and(service).findClassNames();
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.benchmark;
+
+import org.apache.xbean.finder.ResourceFinder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+
+/**
+ * Cost of discovering the META-INF/java.lang.Runnable/ service entries of the fixture.
+ *
+ * @version $Rev$ $Date$
+ */
+@State(Scope.Benchmark)
+public class ResourceFinderBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int classes;
+
+    @Param({"jar", "file", "composite"})
+    public String archive;
+
+    private ClassLoader loader;
+
+    @Setup
+    public void setUp() throws Exception {
+        loader = new Fixture(classes).loader(archive);
+    }
+
+    @Benchmark
+    public Map<String, Class<? extends Runnable>> mapAvailableImplementations() throws Exception {
+        return new ResourceFinder("META-INF/", loader).mapAvailableImplementations(Runnable.class);
+    }
+}
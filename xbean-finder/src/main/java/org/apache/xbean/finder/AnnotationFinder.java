@@ -22,11 +22,23 @@ package org.apache.xbean.finder;
 
 import org.apache.xbean.asm5.original.commons.EmptyVisitor;
 import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.CompositeArchive;
+import org.apache.xbean.finder.archive.FilteredArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.apache.xbean.finder.archive.MappedJarArchive;
+import org.apache.xbean.finder.filter.Filter;
+import org.apache.xbean.finder.index.ClassDefIndex;
+import org.apache.xbean.finder.index.ClassDefReader;
+import org.apache.xbean.finder.index.ClassDefWriter;
+import org.apache.xbean.finder.index.ScanCache;
+import org.apache.xbean.finder.index.SharedScanCache;
 import org.apache.xbean.finder.util.Classes;
+import org.apache.xbean.finder.util.ConstantPool;
 import org.apache.xbean.finder.util.SingleLinkedList;
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.Attribute;
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
@@ -34,26 +46,40 @@ import org.objectweb.asm.Type;
 import org.objectweb.asm.signature.SignatureVisitor;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Target;
 import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * ClassFinder searches the classpath of the specified classloader for
@@ -62,11 +88,16 @@ import java.util.Set;
  * For security reasons ASM is used to find the annotations.  Classes are not
  * loaded unless they match the requirements of a called findAnnotated* method.
  * Once loaded, these classes are cached.
+ * <p/>
+ * Jars carrying a prebuilt {@link ClassDefIndex#RESOURCE} index, as generated by the
+ * finder-index goal of the maven-xbean-plugin, are read from that index instead of
+ * from their bytecode.
  *
  * @version $Rev$ $Date$
  */
 public class AnnotationFinder implements IAnnotationFinder {
     private static final int ASM_FLAGS = ClassReader.SKIP_CODE + ClassReader.SKIP_DEBUG + ClassReader.SKIP_FRAMES;
+    private static final int SCAN_BATCH_SIZE = 64;
 
     private final Set<Class<? extends Annotation>> metaroots = new HashSet<Class<? extends Annotation>>();
 
@@ -75,12 +106,30 @@ public class AnnotationFinder implements IAnnotationFinder {
     protected final Map<String, ClassInfo> classInfos = newClassInfoMap();
     protected final Map<String, ClassInfo> originalInfos = newClassInfoMap();
     private final List<String> classesNotLoaded = new LinkedList<String>();
+    private volatile ConcurrentMap<String, String> names = new ConcurrentHashMap<String, String>();
     private final Archive archive;
     private final boolean checkRuntimeAnnotation;
+    private final ConstantPool prefilter;
+    private final ScanListener listener;
+    private final ScanStatistics linkStatistics;
+    private final List<ScanStatistics> statistics = new ArrayList<ScanStatistics>();
+    private final Object scanLock = new Object();
+    private volatile List<Future<PartialIndex>> scanning;
+    private volatile Throwable scanFailure;
+    private boolean linkedSubclasses;
+    private boolean linkedImplementations;
+    private boolean linkedMetaAnnotations;
+    private AnnotationIndex annotationIndex;
+    private ClassHierarchy hierarchy;
+    private boolean hierarchyIndexed;
+    private PackageIndex packages = new PackageIndex();
 
     private AnnotationFinder(AnnotationFinder parent, Iterable<String> classNames) {
         this.archive = new SubArchive(classNames);
         this.checkRuntimeAnnotation = parent.checkRuntimeAnnotation;
+        this.prefilter = null;
+        this.listener = null;
+        this.linkStatistics = null;
         this.metaroots.addAll(parent.metaroots);
 
         for (Class<? extends Annotation> metaroot : metaroots) {
@@ -114,6 +163,8 @@ public class AnnotationFinder implements IAnnotationFinder {
                 readClassDef(i);
             }
         }
+
+        names = null;
     }
 
     protected Map<String, List<Info>> newAnnotatedMap() {
@@ -130,34 +181,518 @@ public class AnnotationFinder implements IAnnotationFinder {
      * @param checkRuntimeAnnotation Has no effect on findMetaAnnotated* methods
      */
     public AnnotationFinder(Archive archive, boolean checkRuntimeAnnotation) {
+        this(archive, checkRuntimeAnnotation, null);
+    }
+
+    /**
+     * Parses the bytecode of the archive entries concurrently with the given executor.
+     * <p/>
+     * Each task reads a batch of entries into its own partial index, the partial indexes
+     * are merged in archive order so the resulting finder is the same as the one a serial
+     * scan produces.  The archive is iterated on the calling thread, only the reading
+     * and parsing of the entries is done by the executor.
+     *
+     * @param archive
+     * @param checkRuntimeAnnotation Has no effect on findMetaAnnotated* methods
+     * @param executor used to parse the entries, the archive is scanned on the calling thread if null
+     */
+    public AnnotationFinder(Archive archive, boolean checkRuntimeAnnotation, ExecutorService executor) {
+        this(archive, checkRuntimeAnnotation, executor, null);
+    }
+
+    /**
+     * Scans the archive, rebuilding the index of the jars found in the scan cache from
+     * the class definitions recorded there instead of parsing their bytecode.  Jars
+     * which are not in the cache, or changed since, are scanned and recorded in the cache.
+     * <p/>
+     * Jars are found by looking into CompositeArchive and FilteredArchive instances, any
+     * other archive is always scanned.  The cache holds every class of a jar, so the first
+     * scan of a jar behind a FilteredArchive also parses the classes the filter rejects.
+     * <p/>
+     * Finders given no cache use the SharedScanCache when the xbean.finder.shared-scan-cache
+     * system property is true.
+     *
+     * @param archive
+     * @param checkRuntimeAnnotation Has no effect on findMetaAnnotated* methods
+     * @param executor used to parse the entries, the archive is scanned on the calling thread if null
+     * @param cache holds the class definitions of previously scanned jars, no cache is used if null
+     */
+    public AnnotationFinder(Archive archive, boolean checkRuntimeAnnotation, ExecutorService executor, ScanCache cache) {
+        this(archive, checkRuntimeAnnotation, executor, cache, null);
+    }
+
+    /**
+     * Scans the archive for the given annotations only.
+     * <p/>
+     * Before parsing a class its constant pool is searched for the descriptors of the
+     * annotations, classes which don't refer to any of them are only recorded with their
+     * name, super class, interfaces and generic signature.  Their own annotations and members are left out
+     * of the index, so findSubclasses and findImplementations still see them but the
+     * find*Annotated* methods only give results for the given annotations.  Annotations
+     * applied through meta annotations are not seen in the constant pool, the meta
+     * annotations to look for must be given as well.
+     * <p/>
+     * Classes rebuilt from a scan cache or a prebuilt index are always read completely.
+     *
+     * @param archive
+     * @param checkRuntimeAnnotation Has no effect on findMetaAnnotated* methods
+     * @param executor used to parse the entries, the archive is scanned on the calling thread if null
+     * @param cache holds the class definitions of previously scanned jars, no cache is used if null
+     * @param annotations class names of the annotations to index, every class is read completely if null
+     */
+    public AnnotationFinder(Archive archive, boolean checkRuntimeAnnotation, ExecutorService executor, ScanCache cache, Collection<String> annotations) {
+        this(archive, checkRuntimeAnnotation, executor, cache, annotations, null);
+    }
+
+    /**
+     * Scans the archive, reporting to the listener what reading each of its archives and
+     * linking its classes cost.  Without a listener no statistics are gathered and the
+     * classes which can not be read are printed on the console.
+     *
+     * @param archive
+     * @param checkRuntimeAnnotation Has no effect on findMetaAnnotated* methods
+     * @param executor used to parse the entries, the archive is scanned on the calling thread if null
+     * @param cache holds the class definitions of previously scanned jars, no cache is used if null
+     * @param annotations class names of the annotations to index, every class is read completely if null
+     * @param listener receives the statistics of the scan, none are gathered if null
+     */
+    public AnnotationFinder(Archive archive, boolean checkRuntimeAnnotation, ExecutorService executor, ScanCache cache, Collection<String> annotations, ScanListener listener) {
+        this.archive = archive;
+        this.checkRuntimeAnnotation = checkRuntimeAnnotation;
+        this.prefilter = (annotations == null) ? null : new ConstantPool(descriptors(annotations));
+        this.listener = listener;
+        this.linkStatistics = (listener == null) ? null : new ScanStatistics(archive);
+
+        readArchive(archive, null, executor, (cache == null) ? SharedScanCache.getDefault() : cache);
+
+        // keep track of what was originally from the archives
+        originalInfos.putAll(classInfos);
+
+        names = null;
+    }
+
+    public AnnotationFinder(Archive archive) {
+        this(archive, true);
+    }
+
+    /**
+     * Creates a finder whose archives are scanned in the background, the finder is returned
+     * before any of them is read.
+     * <p/>
+     * Each jar or directory of the archive, looking into CompositeArchive and FilteredArchive,
+     * is scanned by its own task of the executor.  The eager archives, or the ones they hold,
+     * are submitted first, the others follow in archive order.  Queries and the link methods
+     * block until every archive is read, any of them may hold the classes a query is after,
+     * and then see the same index a synchronous scan builds.  Use awaitScan() to wait for the
+     * scan explicitly.
+     * <p/>
+     * Indexes built into the jars by the maven-xbean-plugin are used, no scan cache is.
+     *
+     * @param archive
+     * @param checkRuntimeAnnotation Has no effect on findMetaAnnotated* methods
+     * @param executor runs the scanning tasks, a thread of the finder's own is used if null
+     * @param eager the archives to scan first
+     * @return the finder, still scanning
+     */
+    public static AnnotationFinder scanInBackground(Archive archive, boolean checkRuntimeAnnotation, ExecutorService executor, Archive... eager) {
+        final List<Leaf> leaves = new ArrayList<Leaf>();
+        leaves(archive, null, Arrays.asList(eager), false, leaves);
+
+        if (executor != null) {
+            return new AnnotationFinder(archive, leaves, checkRuntimeAnnotation, executor);
+        }
+
+        final ExecutorService thread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "xbean-finder background scan");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            return new AnnotationFinder(archive, leaves, checkRuntimeAnnotation, thread);
+        } finally {
+            // the submitted tasks still run
+            thread.shutdown();
+        }
+    }
+
+    private AnnotationFinder(Archive archive, List<Leaf> leaves, boolean checkRuntimeAnnotation, ExecutorService executor) {
         this.archive = archive;
         this.checkRuntimeAnnotation = checkRuntimeAnnotation;
+        this.prefilter = null;
+        this.listener = null;
+        this.linkStatistics = null;
+
+        final List<Future<PartialIndex>> futures = new ArrayList<Future<PartialIndex>>(Collections.<Future<PartialIndex>>nCopies(leaves.size(), null));
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < leaves.size(); i++) {
+                final Leaf leaf = leaves.get(i);
+                if (leaf.eager == (pass == 0)) {
+                    futures.set(i, executor.submit(new ArchiveScan(leaf)));
+                }
+            }
+        }
+        this.scanning = futures;
+    }
+
+    private static void leaves(Archive archive, Filter filter, List<Archive> eager, boolean eagerParent, List<Leaf> leaves) {
+        final boolean isEager = eagerParent || eager.contains(archive);
+        if (archive instanceof CompositeArchive) {
+            for (Archive child : ((CompositeArchive) archive).getArchives()) {
+                leaves(child, filter, eager, isEager, leaves);
+            }
+        } else if (archive instanceof FilteredArchive) {
+            final FilteredArchive filteredArchive = (FilteredArchive) archive;
+            leaves(filteredArchive.getArchive(), and(filter, filteredArchive.getFilter()), eager, isEager, leaves);
+        } else {
+            leaves.add(new Leaf(archive, filter, isEager));
+        }
+    }
+
+    /**
+     * Waits until the archives scanned in the background are read and adds their classes
+     * to the finder.  Returns at once if the finder was not created by scanInBackground or
+     * the scan is already done.
+     * <p/>
+     * If an archive could not be read the scan is abandoned: its failure is thrown, and an
+     * IllegalStateException caused by it by this method and the queries from then on, the
+     * index is partial.
+     *
+     * @return this finder
+     */
+    public AnnotationFinder awaitScan() {
+        if (scanning == null) return scanFailed();
+
+        synchronized (scanLock) {
+            final List<Future<PartialIndex>> futures = scanning;
+            if (futures == null) return scanFailed();
+
+            // the list is never modified once published, isScanned() reads it without the lock
+            try {
+                for (Future<PartialIndex> future : futures) {
+                    merge(await(future));
+                }
+                originalInfos.putAll(classInfos);
+            } catch (RuntimeException e) {
+                scanFailure = e;
+                throw e;
+            } catch (Error e) {
+                scanFailure = e;
+                throw e;
+            } finally {
+                for (Future<PartialIndex> future : futures) {
+                    future.cancel(true);
+                }
+                scanning = null;
+                names = null;
+            }
+        }
+        return this;
+    }
+
+    private AnnotationFinder scanFailed() {
+        final Throwable failure = scanFailure;
+        if (failure != null) throw new IllegalStateException("The background scan failed, the index is partial", failure);
+        return this;
+    }
+
+    /**
+     * @return true unless archives are still scanned in the background
+     */
+    public boolean isScanned() {
+        final List<Future<PartialIndex>> futures = scanning;
+        if (futures == null) return true;
+
+        for (Future<PartialIndex> future : futures) {
+            if (!future.isDone()) return false;
+        }
+        return true;
+    }
+
+    private void readArchive(Archive archive, Filter filter, ExecutorService executor, ScanCache cache) {
+        if (archive instanceof CompositeArchive) {
+            for (Archive child : ((CompositeArchive) archive).getArchives()) {
+                readArchive(child, filter, executor, cache);
+            }
+        } else if (archive instanceof FilteredArchive) {
+            final FilteredArchive filteredArchive = (FilteredArchive) archive;
+            readArchive(filteredArchive.getArchive(), and(filter, filteredArchive.getFilter()), executor, cache);
+        } else {
+            final ScanStatistics scanned = (listener == null) ? null : new ScanStatistics(archive);
+
+            readArchive(archive, filter, executor, cache, scanned);
+
+            if (scanned != null) {
+                statistics.add(scanned);
+                listener.scanned(scanned);
+            }
+        }
+    }
+
+    private void readArchive(Archive archive, Filter filter, ExecutorService executor, ScanCache cache, ScanStatistics scanned) {
+        if (archive instanceof JarArchive || archive instanceof MappedJarArchive) {
+            final PartialIndex indexed = readIndex(archive, filter, scanned);
+            if (indexed != null) {
+                merge(indexed);
+                return;
+            }
+            if (cache == null) {
+                scanArchive(archive, filter, executor, null, scanned);
+                return;
+            }
+
+            final File file = (archive instanceof JarArchive) ? ((JarArchive) archive).getFile() : ((MappedJarArchive) archive).getFile();
+
+            final byte[] classDefs = cache.load(file);
+            if (classDefs != null) {
+                try {
+                    merge(readClassDefs(classDefs, filter, scanned));
+                    return;
+                } catch (IOException e) {
+                    // corrupted cache entry, scan the jar again
+                }
+            }
+
+            final ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+            scanArchive(archive, filter, executor, recorded, scanned);
+            cache.store(file, recorded.toByteArray());
+        } else {
+            scanArchive(archive, filter, executor, null, scanned);
+        }
+    }
+
+    /**
+     * Reads the jar from the index built into it by the maven-xbean-plugin, if it has one
+     * listing the classes of the jar
+     *
+     * @return the classes of the index or null if the jar has none, or a stale one
+     */
+    private PartialIndex readIndex(Archive archive, Filter filter, ScanStatistics scanned) {
+        try {
+            final InputStream in = (archive instanceof JarArchive)
+                    ? ((JarArchive) archive).getResource(ClassDefIndex.RESOURCE)
+                    : ((MappedJarArchive) archive).getResource(ClassDefIndex.RESOURCE);
+            if (in == null) return null;
 
-        for (Archive.Entry entry : archive) {
-            final String className = entry.getName();
             try {
+                final byte[] classDefs = ClassDefIndex.read(in, archive);
+                // not the classes of the jar, scan the bytecode instead
+                if (classDefs == null) return null;
+
+                return readClassDefs(classDefs, filter, scanned);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // unreadable index, scan the bytecode instead
+            return null;
+        }
+    }
+
+    /**
+     * @param recorded if not null the class definitions of all entries, including the
+     * ones rejected by the filter, are recorded in it
+     */
+    private void scanArchive(Archive archive, Filter filter, ExecutorService executor, ByteArrayOutputStream recorded, ScanStatistics scanned) {
+        if (executor == null) {
+            final DataOutputStream recorder = (recorded == null) ? null : new DataOutputStream(recorded);
+            for (Archive.Entry entry : archive) {
+                readEntry(entry, filter, recorder, null, scanned);
+            }
+            return;
+        }
+
+        final LinkedList<Future<PartialIndex>> pending = new LinkedList<Future<PartialIndex>>();
+        try {
+            List<Archive.Entry> batch = new ArrayList<Archive.Entry>(SCAN_BATCH_SIZE);
+            for (Archive.Entry entry : archive) {
+                batch.add(entry);
+                if (batch.size() < SCAN_BATCH_SIZE) continue;
+
+                pending.add(executor.submit(new PartialScan(batch, filter, recorded != null, scanned)));
+                batch = new ArrayList<Archive.Entry>(SCAN_BATCH_SIZE);
+
+                // merge what is already done so finished partial indexes are not retained
+                while (!pending.isEmpty() && pending.getFirst().isDone()) {
+                    merge(await(pending.removeFirst()), recorded);
+                }
+            }
+            if (!batch.isEmpty()) {
+                pending.add(executor.submit(new PartialScan(batch, filter, recorded != null, scanned)));
+            }
+
+            while (!pending.isEmpty()) {
+                merge(await(pending.removeFirst()), recorded);
+            }
+        } finally {
+            for (Future<PartialIndex> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private void readEntry(Archive.Entry entry, Filter filter, DataOutputStream recorder, PartialIndex partial, ScanStatistics scanned) {
+        final String className = entry.getName();
+        if (scanned != null) scanned.entry();
+
+        final boolean accepted = filter == null || filter.accept(className);
+        if (!accepted && recorder == null) return;
+
+        final long start = (scanned == null) ? 0 : System.nanoTime();
+        try {
+            if (recorder == null && partial == null && prefilter == null && scanned == null) {
                 readClassDef(entry.getBytecode());
-            } catch (NoClassDefFoundError e) {
-                throw new NoClassDefFoundError("Could not fully load class: " + className + "\n due to:" + e.getMessage());
-            } catch (IOException e) {
+                return;
+            }
+
+            InputStream in = (scanned == null) ? entry.getBytecode() : scanned.count(entry.getBytecode());
+            final InfoBuildingVisitor builder = accepted ? new InfoBuildingVisitor(null, partial) : null;
+            ClassVisitor visitor = builder;
+
+            if (accepted && prefilter != null) {
+                final byte[] bytecode = read(in);
+                in = new ByteArrayInputStream(bytecode);
+
+                if (!prefilter.containsAny(bytecode)) {
+                    // the header only, its generic signature is kept for findImplementations
+                    final ClassVisitor header = visitor;
+                    new ClassReader(bytecode).accept(new ClassVisitor(Opcodes.ASM5) {
+                        @Override
+                        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                            header.visit(version, access, name, signature, superName, interfaces);
+                        }
+                    }, ASM_FLAGS);
+                    visitor = null;
+
+                    if (recorder == null) return;
+                }
+            }
+
+            readClassDef(in, (recorder == null) ? visitor : new ClassDefWriter(recorder, visitor));
+
+            if (scanned != null) {
+                scanned.parsed(System.nanoTime() - start, (builder == null) ? 0 : infos(builder.getInfo()));
+            }
+        } catch (NoClassDefFoundError e) {
+            throw new NoClassDefFoundError("Could not fully load class: " + className + "\n due to:" + e.getMessage());
+        } catch (IOException e) {
+            if (scanned == null) {
                 e.printStackTrace();
+            } else {
+                scanned.failed(className, e);
+                listener.failed(scanned.getArchive(), className, e);
             }
         }
+    }
 
-        // keep track of what was originally from the archives
-        originalInfos.putAll(classInfos);
+    /**
+     * @return the number of infos read along with the class or package info
+     */
+    private static int infos(Info info) {
+        if (!(info instanceof ClassInfo)) return (info == null) ? 0 : 1;
+
+        final ClassInfo classInfo = (ClassInfo) info;
+        int count = 1 + classInfo.fields.size();
+        for (MethodInfo method : classInfo.methods) {
+            count += 1 + method.parameters.size();
+        }
+        for (MethodInfo constructor : classInfo.constructors) {
+            count += 1 + constructor.parameters.size();
+        }
+        return count;
     }
 
-    public AnnotationFinder(Archive archive) {
-        this(archive, true);
+    private static byte[] read(InputStream in) throws IOException {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+            final byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static List<String> descriptors(Collection<String> annotations) {
+        final List<String> descriptors = new ArrayList<String>(annotations.size());
+        for (String annotation : annotations) {
+            descriptors.add("L" + annotation.replace('.', '/') + ";");
+        }
+        return descriptors;
+    }
+
+    private PartialIndex readClassDefs(byte[] classDefs, Filter filter, ScanStatistics scanned) throws IOException {
+        final PartialIndex partial = new PartialIndex();
+        final ClassDefReader reader = new ClassDefReader(classDefs);
+        for (String className = reader.next(); className != null; className = reader.next()) {
+            if (scanned != null) scanned.entry();
+            if (filter == null || filter.accept(className)) {
+                final long start = (scanned == null) ? 0 : System.nanoTime();
+                final InfoBuildingVisitor visitor = new InfoBuildingVisitor(null, partial);
+                reader.accept(visitor);
+                if (scanned != null) scanned.parsed(System.nanoTime() - start, infos(visitor.getInfo()));
+            }
+        }
+        if (scanned != null) scanned.read(classDefs.length);
+        return partial;
+    }
+
+    private static Filter and(final Filter first, final Filter second) {
+        if (first == null) return second;
+        return new Filter() {
+            public boolean accept(String name) {
+                return first.accept(name) && second.accept(name);
+            }
+        };
+    }
+
+    private PartialIndex await(Future<PartialIndex> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while scanning the archive", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof Error) throw (Error) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private void merge(PartialIndex partial, ByteArrayOutputStream recorded) {
+        if (recorded != null) {
+            final byte[] bytes = partial.recorded.toByteArray();
+            recorded.write(bytes, 0, bytes.length);
+        }
+        merge(partial);
+    }
+
+    private void merge(PartialIndex partial) {
+        for (ClassInfo classInfo : partial.classes) {
+            putClassInfo(classInfo);
+        }
+        for (int i = 0; i < partial.annotations.size(); i++) {
+            initAnnotationInfos(partial.annotations.get(i)).add(partial.infos.get(i));
+        }
     }
 
     public boolean hasMetaAnnotations() {
         return metaroots.size() > 0;
     }
 
+    private void putClassInfo(ClassInfo classInfo) {
+        final ClassInfo previous = classInfos.put(classInfo.getName(), classInfo);
+        if (previous != null) packages.remove(previous);
+        packages.add(classInfo);
+    }
+
     private void readClassDef(ClassInfo info) {
-        classInfos.put(info.getName(), info);
+        putClassInfo(info);
         index(info);
         index(info.constructors);
         for (MethodInfo ctor : info.constructors) {
@@ -201,6 +736,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public List<String> getAnnotatedClassNames() {
+        awaitScan();
         return new ArrayList<String>(originalInfos.keySet());
     }
 
@@ -215,6 +751,7 @@ public class AnnotationFinder implements IAnnotationFinder {
      * @throws java.io.IOException
      */
     public AnnotationFinder link() {
+        awaitScan();
 
         enableFindSubclasses();
 
@@ -225,32 +762,304 @@ public class AnnotationFinder implements IAnnotationFinder {
         return this;
     }
 
+    /**
+     * @return the statistics of the archives read by the finder, empty if it has no ScanListener
+     */
+    public List<ScanStatistics> getStatistics() {
+        return Collections.unmodifiableList(statistics);
+    }
+
+    /**
+     * @return the statistics of linking the classes, null if the finder has no ScanListener
+     */
+    public ScanStatistics getLinkStatistics() {
+        return linkStatistics;
+    }
+
+    private void linked() {
+        if (listener != null) listener.linked(linkStatistics);
+    }
+
     public AnnotationFinder enableMetaAnnotations() {
+        awaitScan();
         // diff new and old lists
         resolveAnnotations(new LinkedList<String>());
 
         linkMetaAnnotations();
 
+        linkedMetaAnnotations = true;
+
+        linked();
+
         return this;
     }
 
     public AnnotationFinder enableFindImplementations() {
+        awaitScan();
         for (ClassInfo classInfo : classInfos.values().toArray(new ClassInfo[classInfos.size()])) {
 
             linkInterfaces(classInfo);
 
         }
 
+        linkedImplementations = true;
+
+        linked();
+
+        return this;
+    }
+
+    /**
+     * Makes findSubclasses, findImplementations and findInheritedAnnotatedClasses
+     * look the classes up in the ClassHierarchy of the finder, only the classes
+     * found are loaded.  The results are the same, their order may differ.
+     * <p/>
+     * The hierarchy has to reach the parents outside of the archive to match the
+     * results of the class loaders, the subclasses and implementations are linked
+     * first unless they already are.
+     *
+     * @return this finder
+     */
+    public AnnotationFinder enableHierarchyIndex() {
+        awaitScan();
+        if (!linkedSubclasses) enableFindSubclasses();
+        if (!linkedImplementations) enableFindImplementations();
+        hierarchyIndexed = true;
+
+        hierarchy();
+
+        return this;
+    }
+
+    /**
+     * @return the transitive closure of the type hierarchy of the classes read so far,
+     * built on the first call and again after the finder read more classes
+     */
+    public ClassHierarchy hierarchy() {
+        awaitScan();
+        if (hierarchy == null || hierarchy.size() != classInfos.size()) {
+            hierarchy = new ClassHierarchy(classInfos.values(), annotated);
+        }
+        return hierarchy;
+    }
+
+    /**
+     * @return the package tree of the classes read so far, kept up to date as classes are read
+     */
+    public PackageIndex packages() {
+        awaitScan();
+        if (packages.size() != classInfos.size()) {
+            // classInfos was changed directly by a subclass
+            packages = new PackageIndex(classInfos.values());
+        }
+        return packages;
+    }
+
+    public AnnotationFinder enableFindSubclasses() {
+        awaitScan();
+        for (ClassInfo classInfo : classInfos.values().toArray(new ClassInfo[classInfos.size()])) {
+
+            linkParent(classInfo);
+        }
+
+        linkedSubclasses = true;
+
+        linked();
+
+        return this;
+    }
+
+    /**
+     * Brings the finder up to date after classes of the archive were added, modified or deleted,
+     * without scanning the whole archive again.
+     * <p/>
+     * The infos of the changed and removed classes are dropped, the bytecode of the changed
+     * classes is read again from the archive and, for whatever parts of link() were already
+     * done, the new infos are linked to their parents and interfaces.  Subclasses of a changed
+     * class are linked to its new info.
+     * <p/>
+     * Infos only hand out the classes the archive loads, so after a redeploy the archive must
+     * be backed by a ClassLoader that sees the new classes.
+     *
+     * @param changed names of the classes which were added or modified
+     * @param removed names of the classes which were deleted
+     * @return this finder
+     */
+    public AnnotationFinder update(Collection<String> changed, Collection<String> removed) {
+        awaitScan();
+        final Set<Info> stale = new HashSet<Info>();
+        final Set<String> annotations = new HashSet<String>();
+        final List<ClassInfo> orphans = new ArrayList<ClassInfo>();
+
+        for (String className : changed) {
+            forget(className, stale, annotations, orphans);
+        }
+
+        for (String className : removed) {
+            forget(className, stale, annotations, orphans);
+        }
+
+        for (String annotation : annotations) {
+            final List<Info> infos = annotated.get(annotation);
+            if (infos == null) continue;
+
+            infos.removeAll(stale);
+            if (infos.isEmpty()) annotated.remove(annotation);
+        }
+        annotationIndex = null;
+        hierarchy = null;
+
+        final List<ClassInfo> updated = new ArrayList<ClassInfo>();
+        for (String className : changed) {
+            readClassDef(className);
+
+            final ClassInfo classInfo = classInfos.get(className);
+            if (classInfo == null) continue;
+
+            originalInfos.put(className, classInfo);
+            updated.add(classInfo);
+        }
+
+        if (linkedSubclasses) {
+            for (ClassInfo classInfo : updated) {
+                linkParent(classInfo);
+            }
+
+            for (ClassInfo orphan : orphans) {
+                if (stale.contains(orphan)) continue;
+                linkParent(orphan);
+            }
+        }
+
+        if (linkedImplementations) {
+            for (ClassInfo classInfo : updated) {
+                linkInterfaces(classInfo);
+            }
+        }
+
+        if (linkedMetaAnnotations) {
+            enableMetaAnnotations();
+        }
+
+        return this;
+    }
+
+    private void forget(String className, Set<Info> stale, Set<String> annotations, List<ClassInfo> orphans) {
+        originalInfos.remove(className);
+        classesNotLoaded.remove(className);
+
+        if (className.endsWith("package-info")) {
+            // package infos are not kept in classInfos, only in the annotated lists
+            final PackageInfo packageInfo = new PackageInfo(className);
+            stale.add(packageInfo);
+            for (Map.Entry<String, List<Info>> entry : annotated.entrySet()) {
+                if (entry.getValue().contains(packageInfo)) annotations.add(entry.getKey());
+            }
+            return;
+        }
+
+        final ClassInfo classInfo = classInfos.remove(className);
+        if (classInfo == null) return;
+        packages.remove(classInfo);
+
+        stale.add(classInfo);
+        collect(classInfo, annotations);
+
+        for (MethodInfo methodInfo : classInfo.getConstructors()) {
+            forget(methodInfo, stale, annotations);
+        }
+
+        for (MethodInfo methodInfo : classInfo.getMethods()) {
+            forget(methodInfo, stale, annotations);
+        }
+
+        for (FieldInfo fieldInfo : classInfo.getFields()) {
+            stale.add(fieldInfo);
+            collect(fieldInfo, annotations);
+        }
+
+        final ClassInfo parentInfo = classInfo.superclassInfo;
+        if (parentInfo != null) {
+            synchronized (parentInfo.subclassInfos) {
+                parentInfo.subclassInfos.remove(classInfo);
+            }
+        }
+
+        for (ClassInfo subclassInfo : classInfo.subclassInfos) {
+            subclassInfo.superclassInfo = null;
+            orphans.add(subclassInfo);
+        }
+    }
+
+    private void forget(MethodInfo methodInfo, Set<Info> stale, Set<String> annotations) {
+        stale.add(methodInfo);
+        collect(methodInfo, annotations);
+
+        // parameter infos have no equals(), the instances indexed are the ones removed
+        for (ParameterInfo parameterInfo : methodInfo.getParameters()) {
+            stale.add(parameterInfo);
+        }
+    }
+
+    private void collect(Annotatable annotatable, Set<String> annotations) {
+        for (AnnotationInfo annotationInfo : annotatable.getAnnotations()) {
+            annotations.add(annotationInfo.getName());
+        }
+    }
+
+    private void collect(MethodInfo methodInfo, Set<String> annotations) {
+        collect((Annotatable) methodInfo, annotations);
+
+        for (List<AnnotationInfo> parameterAnnotations : methodInfo.getParameterAnnotations()) {
+            for (AnnotationInfo annotationInfo : parameterAnnotations) {
+                annotations.add(annotationInfo.getName());
+            }
+        }
+    }
+
+    /**
+     * Trims the retained size of the index, for finders which are kept for the
+     * whole lifetime of an application.
+     * <p/>
+     * The member and annotation lists of the infos read so far are replaced by
+     * read only lists sized to their elements, or by the shared empty list when
+     * there is nothing in them.  Infos read afterwards, by link() or update(),
+     * are left as they are until compact() is called again.
+     *
+     * @return this finder
+     */
+    public AnnotationFinder compact() {
+        awaitScan();
+        for (ClassInfo classInfo : classInfos.values()) {
+            classInfo.compact();
+        }
+
+        for (List<Info> infos : annotated.values()) {
+            for (Info info : infos) {
+                if (info instanceof PackageInfo) ((PackageInfo) info).compact();
+            }
+        }
+
         return this;
     }
 
-    public AnnotationFinder enableFindSubclasses() {
-        for (ClassInfo classInfo : classInfos.values().toArray(new ClassInfo[classInfos.size()])) {
+    private static <T> List<T> compact(List<T> list) {
+        if (list.isEmpty()) return Collections.emptyList();
+        return Collections.unmodifiableList(new ArrayList<T>(list));
+    }
 
-            linkParent(classInfo);
-        }
+    /**
+     * Names and descriptors repeat across most of the classes of an archive,
+     * every info read by the scan refers to the one instance kept here.  The
+     * pool is dropped when the scan is done, the infos read later by link()
+     * or update() keep their own strings.
+     */
+    private String intern(String name) {
+        final ConcurrentMap<String, String> pool = names;
+        if (name == null || pool == null) return name;
 
-        return this;
+        final String existing = pool.putIfAbsent(name, name);
+        return (existing != null) ? existing : name;
     }
 
     /**
@@ -347,7 +1156,10 @@ public class AnnotationFinder implements IAnnotationFinder {
 
     protected void linkParent(ClassInfo classInfo) {
         if (classInfo.superType == null) return;
-        if (isJvm(classInfo.superType)) return;
+        if (isJvm(classInfo.superType)) {
+            if (linkStatistics != null) linkStatistics.jvmSkipped();
+            return;
+        }
 
         ClassInfo parentInfo = classInfo.superclassInfo;
 
@@ -422,6 +1234,7 @@ public class AnnotationFinder implements IAnnotationFinder {
         } else {
             for (final String className : classInfo.interfaces) {
                 if (isJvm(className)) {
+                    if (linkStatistics != null) linkStatistics.jvmSkipped();
                     continue;
                 }
                 ClassInfo interfaceInfo = classInfos.get(className);
@@ -444,6 +1257,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public boolean isAnnotationPresent(Class<? extends Annotation> annotation) {
+        awaitScan();
         List<Info> infos = annotated.get(annotation.getName());
         return infos != null && !infos.isEmpty();
     }
@@ -466,6 +1280,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public List<Package> findAnnotatedPackages(Class<? extends Annotation> annotation) {
+        awaitScan();
         classesNotLoaded.clear();
         List<Package> packages = new LinkedList<Package>();
         List<Info> infos = getAnnotationInfos(annotation.getName());
@@ -487,6 +1302,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public List<Class<?>> findAnnotatedClasses(Class<? extends Annotation> annotation) {
+        awaitScan();
         classesNotLoaded.clear();
         List<Class<?>> classes = new LinkedList<Class<?>>();
         List<Info> infos = getAnnotationInfos(annotation.getName());
@@ -508,6 +1324,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public List<Annotated<Class<?>>> findMetaAnnotatedClasses(Class<? extends Annotation> annotation) {
+        awaitScan();
         classesNotLoaded.clear();
         Set<Class<?>> classes = findMetaAnnotatedClasses(annotation, new HashSet<Class<?>>());
 
@@ -588,7 +1405,21 @@ public class AnnotationFinder implements IAnnotationFinder {
      * @return list of directly or indirectly (inherited) annotated classes
      */
     public List<Class<?>> findInheritedAnnotatedClasses(Class<? extends Annotation> annotation) {
+        awaitScan();
         classesNotLoaded.clear();
+
+        if (hierarchyIndexed) {
+            final List<Class<?>> classes = new LinkedList<Class<?>>();
+            for (ClassInfo classInfo : hierarchy().getInheritedAnnotated(annotation.getName())) {
+                try {
+                    classes.add(classInfo.get());
+                } catch (ClassNotFoundException e) {
+                    classesNotLoaded.add(classInfo.getName());
+                }
+            }
+            return classes;
+        }
+
         List<Class<?>> classes = new LinkedList<Class<?>>();
         List<Info> infos = getAnnotationInfos(annotation.getName());
         for (Info info : infos) {
@@ -640,6 +1471,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public List<Method> findAnnotatedMethods(Class<? extends Annotation> annotation) {
+        awaitScan();
         classesNotLoaded.clear();
         List<ClassInfo> seen = new LinkedList<ClassInfo>();
         List<Method> methods = new LinkedList<Method>();
@@ -681,6 +1513,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public List<Parameter<Method>> findAnnotatedMethodParameters(Class<? extends Annotation> annotation) {
+        awaitScan();
         classesNotLoaded.clear();
         
         final Set<ClassInfo> seen = checkRuntimeAnnotation ? new HashSet<ClassInfo>() : null;
@@ -727,6 +1560,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public List<Annotated<Method>> findMetaAnnotatedMethods(Class<? extends Annotation> annotation) {
+        awaitScan();
         classesNotLoaded.clear();
 
         Set<Method> methods = findMetaAnnotatedMethods(annotation, new HashSet<Method>(), new HashSet<String>());
@@ -788,6 +1622,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public List<Annotated<Field>> findMetaAnnotatedFields(Class<? extends Annotation> annotation) {
+        awaitScan();
         classesNotLoaded.clear();
 
         Set<Field> fields = findMetaAnnotatedFields(annotation, new HashSet<Field>(), new HashSet<String>());
@@ -849,6 +1684,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public List<Constructor> findAnnotatedConstructors(Class<? extends Annotation> annotation) {
+        awaitScan();
         classesNotLoaded.clear();
         List<ClassInfo> seen = new LinkedList<ClassInfo>();
         List<Constructor> constructors = new LinkedList<Constructor>();
@@ -889,6 +1725,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public List<Parameter<Constructor<?>>> findAnnotatedConstructorParameters(Class<? extends Annotation> annotation) {
+        awaitScan();
         classesNotLoaded.clear();
         
         final Set<ClassInfo> seen = checkRuntimeAnnotation ? new HashSet<ClassInfo>() : null;
@@ -937,6 +1774,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public List<Field> findAnnotatedFields(Class<? extends Annotation> annotation) {
+        awaitScan();
         classesNotLoaded.clear();
         List<ClassInfo> seen = new LinkedList<ClassInfo>();
         List<Field> fields = new LinkedList<Field>();
@@ -976,16 +1814,28 @@ public class AnnotationFinder implements IAnnotationFinder {
         return fields;
     }
 
+    /**
+     * Starts a compound query over the classes of the finder, see AnnotationQuery.
+     * <p/>
+     * The queries are evaluated on an index giving an int id to each class and the set
+     * of the ids of the classes to each annotation.  It is built on the first query and
+     * again after the finder read more classes.
+     */
+    public AnnotationQuery query() {
+        awaitScan();
+        if (annotationIndex == null || annotationIndex.size() != classInfos.size()) {
+            annotationIndex = new AnnotationIndex(classInfos.values(), annotated);
+        }
+        return new AnnotationQuery(annotationIndex);
+    }
+
     public List<Class<?>> findClassesInPackage(String packageName, boolean recursive) {
+        awaitScan();
         classesNotLoaded.clear();
         List<Class<?>> classes = new LinkedList<Class<?>>();
-        for (ClassInfo classInfo : classInfos.values()) {
+        for (ClassInfo classInfo : packages().getClasses(packageName, recursive)) {
             try {
-                if (recursive && classInfo.getPackageName().startsWith(packageName)) {
-                    classes.add(classInfo.get());
-                } else if (classInfo.getPackageName().equals(packageName)) {
-                    classes.add(classInfo.get());
-                }
+                classes.add(classInfo.get());
             } catch (ClassNotFoundException e) {
                 classesNotLoaded.add(classInfo.getName());
             }
@@ -994,10 +1844,13 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public <T> List<Class<? extends T>> findSubclasses(Class<T> clazz) {
+        awaitScan();
         if (clazz == null) throw new NullPointerException("class cannot be null");
 
         classesNotLoaded.clear();
 
+        if (hierarchyIndexed) return load(hierarchy().getSubtypes(clazz.getName()), clazz);
+
         final ClassInfo classInfo = classInfos.get(clazz.getName());
 
         List<Class<? extends T>> found = new LinkedList<Class<? extends T>>();
@@ -1053,10 +1906,13 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public <T> List<Class<? extends T>> findImplementations(Class<T> clazz) {
+        awaitScan();
         if (clazz == null) throw new NullPointerException("class cannot be null");
         if (!clazz.isInterface()) new IllegalArgumentException("class must be an interface");
         classesNotLoaded.clear();
 
+        if (hierarchyIndexed) return load(hierarchy().getSubtypes(clazz.getName()), clazz);
+
         final String interfaceName = clazz.getName();
 
         // Collect all interfaces extending the main interface (recursively)
@@ -1091,6 +1947,112 @@ public class AnnotationFinder implements IAnnotationFinder {
         return classes;
     }
 
+    /**
+     * Finds the classes extending or implementing the type with the given type arguments,
+     * as in all the implementations of Converter&lt;Foo&gt;, from the generic signatures
+     * of the classes.  Only the classes found are loaded.
+     * <p/>
+     * Type variables are followed down the hierarchy, a class extending AbstractConverter&lt;Foo&gt;
+     * where AbstractConverter&lt;T&gt; implements Converter&lt;T&gt; is an implementation of
+     * Converter&lt;Foo&gt;.  The hierarchy is not followed through the java.* classes.
+     * <p/>
+     * A Class argument matches the type whatever its own type arguments, a ParameterizedType
+     * only matches the same arguments, a WildcardType or TypeVariable matches any argument.
+     * Without type arguments every subclass or implementation is found, interfaces excluded.
+     *
+     * @param rawType a class or interface
+     * @param typeArguments the arguments the type must be extended or implemented with
+     * @return the classes, not the interfaces, extending or implementing the type with the arguments
+     */
+    public <T> List<Class<? extends T>> findImplementations(Class<T> rawType, java.lang.reflect.Type... typeArguments) {
+        awaitScan();
+        if (rawType == null) throw new NullPointerException("class cannot be null");
+        classesNotLoaded.clear();
+
+        final String name = rawType.getName();
+        final Map<String, Map<String, GenericType>> supertypes = new HashMap<String, Map<String, GenericType>>();
+
+        final List<Class<? extends T>> classes = new LinkedList<Class<? extends T>>();
+        for (ClassInfo info : classInfos.values().toArray(new ClassInfo[classInfos.size()])) {
+            final GenericType supertype = supertypes(info, supertypes).get(name);
+            if (supertype == null || !supertype.matches(typeArguments)) continue;
+
+            try {
+                final Class<?> clazz = info.get();
+                if (!clazz.isInterface() && rawType.isAssignableFrom(clazz)) {
+                    classes.add(clazz.asSubclass(rawType));
+                }
+            } catch (ClassNotFoundException e) {
+                classesNotLoaded.add(info.getName());
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * @return all the super types of the class by class name, with the type arguments they are
+     * extended or implemented with, in terms of the type parameters of the class
+     */
+    private Map<String, GenericType> supertypes(ClassInfo info, Map<String, Map<String, GenericType>> resolved) {
+        final Map<String, GenericType> known = resolved.get(info.getName());
+        if (known != null) return known;
+
+        final Map<String, GenericType> supertypes = new HashMap<String, GenericType>();
+        // guards against cycles in broken hierarchies
+        resolved.put(info.getName(), supertypes);
+
+        for (GenericType direct : declaration(info).getSupertypes()) {
+            final String superName = direct.getRaw();
+            if (superName == null || supertypes.containsKey(superName)) continue;
+            supertypes.put(superName, direct);
+
+            if (isJvm(superName)) continue;
+            if (!classInfos.containsKey(superName)) readClassDef(superName);
+            final ClassInfo superInfo = classInfos.get(superName);
+            if (superInfo == null) continue;
+
+            final Map<String, GenericType> bindings = declaration(superInfo).bind(direct);
+            for (Map.Entry<String, GenericType> inherited : supertypes(superInfo, resolved).entrySet()) {
+                if (!supertypes.containsKey(inherited.getKey())) {
+                    supertypes.put(inherited.getKey(), inherited.getValue().substitute(bindings));
+                }
+            }
+        }
+        return supertypes;
+    }
+
+    private static GenericType.Declaration declaration(ClassInfo info) {
+        if (info.signature != null) {
+            try {
+                return GenericType.parse(info.signature);
+            } catch (RuntimeException e) {
+                // malformed signature, use the raw types
+            }
+        }
+
+        final List<GenericType> supertypes = new ArrayList<GenericType>();
+        if (info.superType != null) supertypes.add(GenericType.raw(info.superType));
+        for (String interfce : info.interfaces) {
+            supertypes.add(GenericType.raw(interfce));
+        }
+        return new GenericType.Declaration(Collections.<String>emptyList(), supertypes);
+    }
+
+    private <T> List<Class<? extends T>> load(List<ClassInfo> infos, Class<T> clazz) {
+        final List<Class<? extends T>> classes = new LinkedList<Class<? extends T>>();
+        for (ClassInfo info : infos) {
+            try {
+                final Class<?> type = info.get();
+                if (clazz.isAssignableFrom(type)) {
+                    classes.add(type.asSubclass(clazz));
+                }
+            } catch (ClassNotFoundException e) {
+                classesNotLoaded.add(info.getName());
+            }
+        }
+        return classes;
+    }
+
     private List<ClassInfo> collectImplementations(String interfaceName) {
         final List<ClassInfo> infos = new LinkedList<ClassInfo>();
 
@@ -1119,12 +2081,17 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     protected List<Info> getAnnotationInfos(String name) {
+        awaitScan();
         final List<Info> infos = annotated.get(name);
         if (infos != null) return infos;
         return Collections.EMPTY_LIST;
     }
 
     protected List<Info> initAnnotationInfos(String name) {
+        // called for every info added to the annotated lists
+        annotationIndex = null;
+        hierarchy = null;
+
         List<Info> infos = annotated.get(name);
         if (infos == null) {
             infos = new SingleLinkedList<Info>();
@@ -1135,11 +2102,16 @@ public class AnnotationFinder implements IAnnotationFinder {
 
     protected void readClassDef(String className) {
         if (classInfos.containsKey(className)) return;
+        if (linkStatistics != null) linkStatistics.faultIn();
         try {
             readClassDef(archive.getBytecode(className));
         } catch (Exception e) {
             if (className.endsWith("$$")) return;
             classesNotLoaded.add(className);
+            if (linkStatistics != null) {
+                linkStatistics.failed(className, e);
+                listener.failed(archive, className, e);
+            }
         }
     }
 
@@ -1152,7 +2124,18 @@ public class AnnotationFinder implements IAnnotationFinder {
         }
     }
 
+    private void readClassDef(InputStream in, ClassVisitor visitor) throws IOException {
+        try {
+            ClassReader classReader = new ClassReader(in);
+            classReader.accept(visitor, ASM_FLAGS);
+        } finally {
+            in.close();
+        }
+    }
+
     protected void readClassDef(Class clazz) {
+        if (linkStatistics != null) linkStatistics.faultIn();
+
         List<Info> infos = new LinkedList<Info>();
 
         Package aPackage = clazz.getPackage();
@@ -1215,6 +2198,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public AnnotationFinder select(Iterable<String> clazz) {
+        awaitScan();
         return new AnnotationFinder(this, clazz);
     }
 
@@ -1263,7 +2247,7 @@ public class AnnotationFinder implements IAnnotationFinder {
     }
 
     public class Annotatable {
-        private final List<AnnotationInfo> annotations = new LinkedList<AnnotationInfo>();
+        private List<AnnotationInfo> annotations = new LinkedList<AnnotationInfo>();
 
         public Annotatable(AnnotatedElement element) {
             for (Annotation annotation : getAnnotations(element)) {
@@ -1286,6 +2270,13 @@ public class AnnotationFinder implements IAnnotationFinder {
             return null;
         }
 
+        protected void compact() {
+            for (AnnotationInfo annotation : annotations) {
+                annotation.compact();
+            }
+            annotations = AnnotationFinder.compact(annotations);
+        }
+
         /**
          * Utility method to get around some errors caused by
          * interactions between the Equinox class loaders and
@@ -1370,14 +2361,15 @@ public class AnnotationFinder implements IAnnotationFinder {
 
     public class ClassInfo extends Annotatable implements Info {
         private String name;
-        private final List<MethodInfo> methods = new SingleLinkedList<MethodInfo>();
-        private final List<MethodInfo> constructors = new SingleLinkedList<MethodInfo>();
+        private List<MethodInfo> methods = new SingleLinkedList<MethodInfo>();
+        private List<MethodInfo> constructors = new SingleLinkedList<MethodInfo>();
         private String superType;
         private ClassInfo superclassInfo;
         private final List<ClassInfo> subclassInfos = new SingleLinkedList<ClassInfo>();
-        private final List<String> interfaces = new SingleLinkedList<String>();
-        private final List<FieldInfo> fields = new SingleLinkedList<FieldInfo>();
+        private List<String> interfaces = new SingleLinkedList<String>();
+        private List<FieldInfo> fields = new SingleLinkedList<FieldInfo>();
         private Class<?> clazz;
+        private String signature;
 
 
         public ClassInfo(Class clazz) {
@@ -1392,8 +2384,8 @@ public class AnnotationFinder implements IAnnotationFinder {
         }
 
         public ClassInfo(final String name, final String superType) {
-            this.name = name;
-            this.superType = superType;
+            this.name = intern(name);
+            this.superType = intern(superType);
         }
 
         @Override
@@ -1442,10 +2434,40 @@ public class AnnotationFinder implements IAnnotationFinder {
             return superType;
         }
 
+        /**
+         * @return the generic signature of the class, null if it neither declares type
+         * parameters nor extends or implements a parameterized type
+         */
+        public String getSignature() {
+            return signature;
+        }
+
         public boolean isAnnotation() {
             return "java.lang.Object".equals(superType) && interfaces.size() == 1 && "java.lang.annotation.Annotation".equals(interfaces.get(0));
         }
 
+        @Override
+        protected void compact() {
+            super.compact();
+
+            for (MethodInfo methodInfo : constructors) {
+                methodInfo.compact();
+            }
+
+            for (MethodInfo methodInfo : methods) {
+                methodInfo.compact();
+            }
+
+            for (FieldInfo fieldInfo : fields) {
+                fieldInfo.compact();
+            }
+
+            constructors = AnnotationFinder.compact(constructors);
+            methods = AnnotationFinder.compact(methods);
+            interfaces = AnnotationFinder.compact(interfaces);
+            fields = AnnotationFinder.compact(fields);
+        }
+
         public Class<?> get() throws ClassNotFoundException {
             if (clazz != null) return clazz;
             try {
@@ -1467,8 +2489,8 @@ public class AnnotationFinder implements IAnnotationFinder {
         private final ClassInfo declaringClass;
         private final String descriptor;
         private final String name;
-        private final List<List<AnnotationInfo>> parameterAnnotations = new LinkedList<List<AnnotationInfo>>();
-        private final List<ParameterInfo> parameters = new SingleLinkedList<ParameterInfo>();
+        private List<List<AnnotationInfo>> parameterAnnotations = new LinkedList<List<AnnotationInfo>>();
+        private List<ParameterInfo> parameters = new SingleLinkedList<ParameterInfo>();
         private Member method;
 
         public MethodInfo(ClassInfo info, Constructor constructor) {
@@ -1488,8 +2510,8 @@ public class AnnotationFinder implements IAnnotationFinder {
 
         public MethodInfo(ClassInfo declarignClass, String name, String descriptor) {
             this.declaringClass = declarignClass;
-            this.name = name;
-            this.descriptor = descriptor;
+            this.name = intern(name);
+            this.descriptor = intern(descriptor);
         }
 
         public String getDescriptor() {
@@ -1521,6 +2543,9 @@ public class AnnotationFinder implements IAnnotationFinder {
 
         public List<AnnotationInfo> getParameterAnnotations(int index) {
             if (index >= parameterAnnotations.size()) {
+                // compacted, see compact()
+                if (!(parameterAnnotations instanceof LinkedList)) return Collections.emptyList();
+
                 for (int i = parameterAnnotations.size(); i <= index; i++) {
                     List<AnnotationInfo> annotationInfos = new LinkedList<AnnotationInfo>();
                     parameterAnnotations.add(i, annotationInfos);
@@ -1533,6 +2558,25 @@ public class AnnotationFinder implements IAnnotationFinder {
             return parameters;
         }
 
+        @Override
+        protected void compact() {
+            super.compact();
+
+            final List<List<AnnotationInfo>> compacted = new ArrayList<List<AnnotationInfo>>(parameterAnnotations.size());
+            for (List<AnnotationInfo> annotationInfos : parameterAnnotations) {
+                for (AnnotationInfo annotationInfo : annotationInfos) {
+                    annotationInfo.compact();
+                }
+                compacted.add(AnnotationFinder.compact(annotationInfos));
+            }
+            parameterAnnotations = AnnotationFinder.compact(compacted);
+
+            for (ParameterInfo parameterInfo : parameters) {
+                parameterInfo.compact();
+            }
+            parameters = AnnotationFinder.compact(parameters);
+        }
+
         public String getName() {
             return name;
         }
@@ -1594,7 +2638,6 @@ public class AnnotationFinder implements IAnnotationFinder {
     public class ParameterInfo extends Annotatable implements Info {
         private final MethodInfo declaringMethod;
         private final int index;
-        private final List<AnnotationInfo> annotations = new LinkedList<AnnotationInfo>();
         private Parameter<?> parameter;
 
         public ParameterInfo(MethodInfo parent, int index) {
@@ -1662,8 +2705,8 @@ public class AnnotationFinder implements IAnnotationFinder {
 
         public FieldInfo(ClassInfo declaringClass, String name, String type) {
             this.declaringClass = declaringClass;
-            this.name = name;
-            this.type = type;
+            this.name = intern(name);
+            this.type = intern(type);
         }
 
         public String getName() {
@@ -1722,8 +2765,18 @@ public class AnnotationFinder implements IAnnotationFinder {
         }
     }
 
+    /**
+     * An annotation as read from the bytecode, with the values given to its elements.
+     * <p/>
+     * Values are boxed primitives, strings, {@link EnumValue}, {@link TypeValue} for
+     * classes, AnnotationInfo for nested annotations and unmodifiable lists for arrays.
+     * Only the elements given where the annotation is used are known, the defaults
+     * declared by the annotation type are not.  Annotations of classes the finder
+     * read through reflection have no values.
+     */
     public class AnnotationInfo extends Annotatable implements Info {
         private final String name;
+        private Map<String, Object> values;
 
         public AnnotationInfo(Annotation annotation) {
             this(annotation.getClass().getName());
@@ -1739,24 +2792,291 @@ public class AnnotationFinder implements IAnnotationFinder {
             if (name == null) {
                 name = type.getDescriptor(); // name was already a class name
             }
+            this.name = intern(name);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the values of the elements given to the annotation, by element name
+         */
+        public Map<String, Object> getValues() {
+            if (values == null) return Collections.emptyMap();
+            return Collections.unmodifiableMap(values);
+        }
+
+        /**
+         * @return the value of the element or null if it was not given
+         */
+        public Object getValue(String element) {
+            return (values == null) ? null : values.get(element);
+        }
+
+        private void setValue(String element, Object value) {
+            if (values == null) values = new LinkedHashMap<String, Object>(4);
+            values.put(intern(element), value);
+        }
+
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * The value of an enum element of an annotation
+     */
+    public static final class EnumValue {
+        private final String type;
+        private final String name;
+
+        public EnumValue(String type, String name) {
+            this.type = type;
             this.name = name;
         }
 
+        /**
+         * @return the class name of the enum
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return the name of the constant
+         */
         public String getName() {
             return name;
         }
 
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o instanceof Enum) {
+                final Enum<?> constant = (Enum<?>) o;
+                return constant.getDeclaringClass().getName().equals(type) && constant.name().equals(name);
+            }
+            if (!(o instanceof EnumValue)) return false;
+            final EnumValue that = (EnumValue) o;
+            return type.equals(that.type) && name.equals(that.name);
+        }
+
+        public int hashCode() {
+            return 31 * type.hashCode() + name.hashCode();
+        }
+
         public String toString() {
+            return type + "." + name;
+        }
+    }
+
+    /**
+     * The value of a class element of an annotation, the class is not loaded
+     */
+    public static final class TypeValue {
+        private final String name;
+
+        public TypeValue(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the class name, as Class.getName() would give it
+         */
+        public String getName() {
             return name;
         }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o instanceof Class) return ((Class<?>) o).getName().equals(name);
+            return o instanceof TypeValue && name.equals(((TypeValue) o).name);
+        }
+
+        public int hashCode() {
+            return name.hashCode();
+        }
+
+        public String toString() {
+            return name + ".class";
+        }
+    }
+
+    /**
+     * Reads the values of the elements of an annotation, or the items of an array value
+     */
+    private class AnnotationValueVisitor extends AnnotationVisitor {
+        private final AnnotationInfo annotation;
+        private final List<Object> array;
+
+        private AnnotationValueVisitor(AnnotationInfo annotation, List<Object> array) {
+            super(Opcodes.ASM5);
+            this.annotation = annotation;
+            this.array = array;
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            if (value instanceof Type) {
+                final Type type = (Type) value;
+                final String className = (type.getSort() == Type.ARRAY) ? type.getDescriptor().replace('/', '.') : type.getClassName();
+                value = new TypeValue(intern(className));
+            } else if (value != null && value.getClass().isArray()) {
+                // arrays of primitives are given in one go
+                final int length = Array.getLength(value);
+                final List<Object> items = new ArrayList<Object>(length);
+                for (int i = 0; i < length; i++) {
+                    items.add(Array.get(value, i));
+                }
+                value = Collections.unmodifiableList(items);
+            }
+            add(name, value);
+        }
+
+        @Override
+        public void visitEnum(String name, String desc, String value) {
+            add(name, new EnumValue(intern(Type.getType(desc).getClassName()), intern(value)));
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String name, String desc) {
+            final AnnotationInfo nested = new AnnotationInfo(desc);
+            add(name, nested);
+            return new AnnotationValueVisitor(nested, null);
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(String name) {
+            final List<Object> items = new ArrayList<Object>();
+            add(name, Collections.unmodifiableList(items));
+            return new AnnotationValueVisitor(null, items);
+        }
+
+        private void add(String name, Object value) {
+            if (array != null) {
+                array.add(value);
+            } else {
+                annotation.setValue(name, value);
+            }
+        }
+    }
+
+    /**
+     * Finds the annotated classes, packages, methods, constructors, fields and parameters
+     * whose annotation has the given value, without loading any class.  The value matches
+     * an element holding an array if it is one of its items.  Enum constants and classes
+     * can be given as they are or as EnumValue and TypeValue.
+     *
+     * @param annotation the class name of the annotation
+     * @param element the name of the annotation element, for instance "value"
+     * @param value the value to look for
+     * @return the infos annotated with the annotation holding that value
+     */
+    public List<Info> findAnnotatedInfos(String annotation, String element, Object value) {
+        awaitScan();
+        final List<Info> found = new ArrayList<Info>();
+        for (Info info : getAnnotationInfos(annotation)) {
+            for (AnnotationInfo annotationInfo : info.getAnnotations()) {
+                if (!annotationInfo.getName().equals(annotation)) continue;
+                if (matches(annotationInfo.getValue(element), value)) {
+                    found.add(info);
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    private static boolean matches(Object actual, Object expected) {
+        if (actual == null) return expected == null;
+        if (actual instanceof List && !(expected instanceof List)) {
+            for (Object item : (List<?>) actual) {
+                if (matches(item, expected)) return true;
+            }
+            return false;
+        }
+        // EnumValue and TypeValue know about Enum and Class
+        return actual.equals(expected);
     }
 
     private void index(AnnotationInfo annotationInfo, Info info) {
         initAnnotationInfos(annotationInfo.getName()).add(info);
     }
 
+    /**
+     * The infos read by one parallel scanning task, kept apart
+     * from the finder until they are merged in archive order.
+     */
+    private static final class PartialIndex {
+        private final List<ClassInfo> classes = new ArrayList<ClassInfo>();
+        private final List<String> annotations = new ArrayList<String>();
+        private final List<Info> infos = new ArrayList<Info>();
+        private final ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+    }
+
+    private class PartialScan implements Callable<PartialIndex> {
+        private final List<Archive.Entry> entries;
+        private final Filter filter;
+        private final boolean record;
+        private final ScanStatistics scanned;
+
+        private PartialScan(List<Archive.Entry> entries, Filter filter, boolean record, ScanStatistics scanned) {
+            this.entries = entries;
+            this.filter = filter;
+            this.record = record;
+            this.scanned = scanned;
+        }
+
+        public PartialIndex call() throws Exception {
+            final PartialIndex partial = new PartialIndex();
+            final DataOutputStream recorder = record ? new DataOutputStream(partial.recorded) : null;
+            for (Archive.Entry entry : entries) {
+                readEntry(entry, filter, recorder, partial, scanned);
+            }
+            return partial;
+        }
+    }
+
+    /**
+     * A jar or directory of the archive, with the filters of the FilteredArchives holding it
+     */
+    private static final class Leaf {
+        private final Archive archive;
+        private final Filter filter;
+        private final boolean eager;
+
+        private Leaf(Archive archive, Filter filter, boolean eager) {
+            this.archive = archive;
+            this.filter = filter;
+            this.eager = eager;
+        }
+    }
+
+    private class ArchiveScan implements Callable<PartialIndex> {
+        private final Leaf leaf;
+
+        private ArchiveScan(Leaf leaf) {
+            this.leaf = leaf;
+        }
+
+        public PartialIndex call() throws Exception {
+            if (leaf.archive instanceof JarArchive || leaf.archive instanceof MappedJarArchive) {
+                final PartialIndex indexed = readIndex(leaf.archive, leaf.filter, null);
+                if (indexed != null) return indexed;
+            }
+
+            final PartialIndex partial = new PartialIndex();
+            for (Archive.Entry entry : leaf.archive) {
+                if (Thread.currentThread().isInterrupted()) break;
+                readEntry(entry, leaf.filter, null, partial, null);
+            }
+            return partial;
+        }
+    }
+
     public class InfoBuildingVisitor extends EmptyVisitor {
         private Info info;
+        private PartialIndex partial;
 
         public InfoBuildingVisitor() {
         }
@@ -1765,6 +3085,11 @@ public class AnnotationFinder implements IAnnotationFinder {
             this.info = info;
         }
 
+        private InfoBuildingVisitor(Info info, PartialIndex partial) {
+            this.info = info;
+            this.partial = partial;
+        }
+
         public Info getInfo() {
             return info;
         }
@@ -1776,17 +3101,31 @@ public class AnnotationFinder implements IAnnotationFinder {
             } else {
 
                 ClassInfo classInfo = new ClassInfo(javaName(name), javaName(superName));
+                classInfo.signature = signature;
 
 //                if (signature == null) {
                     for (final String interfce : interfaces) {
-                        classInfo.interfaces.add(javaName(interfce));
+                        classInfo.interfaces.add(intern(javaName(interfce)));
                     }
 //                } else {
 //                    // the class uses generics
 //                    new SignatureReader(signature).accept(new GenericAwareInfoBuildingVisitor(GenericAwareInfoBuildingVisitor.TYPE.CLASS, classInfo));
 //                }
                 info = classInfo;
-                classInfos.put(classInfo.getName(), classInfo);
+                if (partial == null) {
+                    putClassInfo(classInfo);
+                } else {
+                    partial.classes.add(classInfo);
+                }
+            }
+        }
+
+        private void index(AnnotationInfo annotationInfo, Info info) {
+            if (partial == null) {
+                AnnotationFinder.this.index(annotationInfo, info);
+            } else {
+                partial.annotations.add(annotationInfo.getName());
+                partial.infos.add(info);
             }
         }
 
@@ -1809,7 +3148,7 @@ public class AnnotationFinder implements IAnnotationFinder {
             AnnotationInfo annotationInfo = new AnnotationInfo(desc);
             info.getAnnotations().add(annotationInfo);
             index(annotationInfo, info);
-            return new InfoBuildingVisitor(annotationInfo).annotationVisitor();
+            return new AnnotationValueVisitor(annotationInfo, null);
         }
 
         @Override
@@ -1817,7 +3156,7 @@ public class AnnotationFinder implements IAnnotationFinder {
             ClassInfo classInfo = ((ClassInfo) info);
             FieldInfo fieldInfo = new FieldInfo(classInfo, name, desc);
             classInfo.getFields().add(fieldInfo);
-            return new InfoBuildingVisitor(fieldInfo).fieldVisitor();
+            return new InfoBuildingVisitor(fieldInfo, partial).fieldVisitor();
         }
 
         @Override
@@ -1826,7 +3165,7 @@ public class AnnotationFinder implements IAnnotationFinder {
             MethodInfo methodInfo = new MethodInfo(classInfo, name, desc);
 
             classInfo.getMethods().add(methodInfo);
-            return new InfoBuildingVisitor(methodInfo).methodVisitor();
+            return new InfoBuildingVisitor(methodInfo, partial).methodVisitor();
         }
 
 
@@ -1838,10 +3177,11 @@ public class AnnotationFinder implements IAnnotationFinder {
             annotationInfos.add(annotationInfo);
 
             ParameterInfo parameterInfo = new ParameterInfo(methodInfo, param);
+            parameterInfo.getAnnotations().add(annotationInfo);
             methodInfo.getParameters().add(parameterInfo);
             index(annotationInfo, parameterInfo);
 
-            return new InfoBuildingVisitor(annotationInfo).annotationVisitor();
+            return new AnnotationValueVisitor(annotationInfo, null);
         }
     }
 
@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inverted index of the classes of an AnnotationFinder.  Every class gets a
+ * dense int id and each annotation the set of the ids of the classes it is
+ * applied to, built the first time the annotation is queried.
+ *
+ * @version $Rev$ $Date$
+ */
+final class AnnotationIndex {
+
+    private final Map<String, List<AnnotationFinder.Info>> annotated;
+    private final List<AnnotationFinder.ClassInfo> classes;
+    private final Map<AnnotationFinder.ClassInfo, Integer> ids;
+    private final Map<String, BitSet> annotations = new HashMap<String, BitSet>();
+    private final BitSet all = new BitSet();
+
+    AnnotationIndex(Collection<AnnotationFinder.ClassInfo> classInfos, Map<String, List<AnnotationFinder.Info>> annotated) {
+        this.annotated = annotated;
+        this.classes = new ArrayList<AnnotationFinder.ClassInfo>(classInfos);
+        this.ids = new IdentityHashMap<AnnotationFinder.ClassInfo, Integer>(classes.size());
+
+        for (int id = 0; id < classes.size(); id++) {
+            ids.put(classes.get(id), id);
+        }
+        all.set(0, classes.size());
+    }
+
+    /**
+     * @return the ids of all the classes, not to be modified
+     */
+    BitSet all() {
+        return all;
+    }
+
+    /**
+     * @return the ids of the classes annotated with the annotation, not to be modified
+     */
+    BitSet annotatedWith(String annotation) {
+        BitSet bits = annotations.get(annotation);
+        if (bits != null) return bits;
+
+        bits = new BitSet(classes.size());
+
+        final List<AnnotationFinder.Info> infos = annotated.get(annotation);
+        if (infos != null) {
+            for (AnnotationFinder.Info info : infos) {
+                if (!(info instanceof AnnotationFinder.ClassInfo)) continue;
+
+                final Integer id = ids.get(info);
+                if (id != null) bits.set(id);
+            }
+        }
+
+        annotations.put(annotation, bits);
+        return bits;
+    }
+
+    int size() {
+        return classes.size();
+    }
+
+    AnnotationFinder.ClassInfo getClassInfo(int id) {
+        return classes.get(id);
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Compound query over the classes of an AnnotationFinder, for instance
+ * <pre>
+ * finder.query().annotatedWith(Stateless.class).and(Local.class).not(Deprecated.class).inPackage("org.acme").find();
+ * </pre>
+ * <p/>
+ * A query starts with every class of the finder.  Each step is evaluated on the
+ * bitsets of the finder's annotation index, only the classes left at the end are
+ * loaded.  The query works on the annotations found in the bytecode, it does not
+ * double check them with reflection like a finder created with checkRuntimeAnnotation
+ * does, and meta-annotations are not followed.
+ *
+ * @version $Rev$ $Date$
+ */
+public class AnnotationQuery {
+
+    private final AnnotationIndex index;
+    private final BitSet matches;
+
+    AnnotationQuery(AnnotationIndex index) {
+        this.index = index;
+        this.matches = (BitSet) index.all().clone();
+    }
+
+    /**
+     * Keeps the classes annotated with the annotation
+     */
+    public AnnotationQuery annotatedWith(Class<? extends Annotation> annotation) {
+        return and(annotation);
+    }
+
+    /**
+     * Keeps the classes annotated with the annotation
+     */
+    public AnnotationQuery and(Class<? extends Annotation> annotation) {
+        matches.and(index.annotatedWith(annotation.getName()));
+        return this;
+    }
+
+    /**
+     * Adds the classes annotated with the annotation
+     */
+    public AnnotationQuery or(Class<? extends Annotation> annotation) {
+        matches.or(index.annotatedWith(annotation.getName()));
+        return this;
+    }
+
+    /**
+     * Drops the classes annotated with the annotation
+     */
+    public AnnotationQuery not(Class<? extends Annotation> annotation) {
+        matches.andNot(index.annotatedWith(annotation.getName()));
+        return this;
+    }
+
+    /**
+     * Keeps the classes of the package, not the ones of its sub packages
+     */
+    public AnnotationQuery inPackage(String packageName) {
+        return inPackage(packageName, false);
+    }
+
+    /**
+     * Keeps the classes of the package
+     *
+     * @param recursive if the classes of the sub packages are kept as well
+     */
+    public AnnotationQuery inPackage(String packageName, boolean recursive) {
+        final String prefix = packageName + ".";
+        for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+            final String name = index.getClassInfo(id).getPackageName();
+            if (name.equals(packageName)) continue;
+            if (recursive && name.startsWith(prefix)) continue;
+
+            matches.clear(id);
+        }
+        return this;
+    }
+
+    public int count() {
+        return matches.cardinality();
+    }
+
+    /**
+     * @return the names of the matching classes, none of them is loaded
+     */
+    public List<String> findClassNames() {
+        final List<String> names = new ArrayList<String>(matches.cardinality());
+        for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+            names.add(index.getClassInfo(id).getName());
+        }
+        return names;
+    }
+
+    /**
+     * @return the matching classes, the ones which can't be loaded are left out
+     * and reported by the finder's getClassesNotLoaded()
+     */
+    public List<Class<?>> find() {
+        final List<Class<?>> classes = new ArrayList<Class<?>>(matches.cardinality());
+        for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+            try {
+                classes.add(index.getClassInfo(id).get());
+            } catch (ClassNotFoundException e) {
+                // recorded by the ClassInfo
+            }
+        }
+        return classes;
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The transitive closure of the type hierarchy of the classes of an AnnotationFinder.
+ * <p/>
+ * Every class, and every super class or interface they refer to, gets an int id.  The
+ * types are sorted so that super types come before their subtypes, then the set of all
+ * the subtypes of each type is built in one pass from the last type to the first.  The
+ * lookups return ClassInfo handles, no class is loaded.
+ * <p/>
+ * Super types which are not in the finder are part of the hierarchy by name only, so
+ * the subtypes of java.io.Serializable can be looked up even if it was never read.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ClassHierarchy {
+
+    private final Map<String, List<AnnotationFinder.Info>> annotated;
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+    private final List<AnnotationFinder.ClassInfo> infos = new ArrayList<AnnotationFinder.ClassInfo>();
+    private final int classes;
+    private final BitSet[] subtypes;
+
+    ClassHierarchy(Collection<AnnotationFinder.ClassInfo> classInfos, Map<String, List<AnnotationFinder.Info>> annotated) {
+        this.annotated = annotated;
+        this.classes = classInfos.size();
+
+        for (AnnotationFinder.ClassInfo classInfo : classInfos) {
+            ids.put(classInfo.getName(), infos.size());
+            infos.add(classInfo);
+        }
+
+        // direct super types of the classes, adding the ones only known by name
+        final int[][] parents = new int[classes][];
+        for (int id = 0; id < classes; id++) {
+            final AnnotationFinder.ClassInfo classInfo = infos.get(id);
+            final List<String> interfaces = classInfo.getInterfaces();
+            final String superType = classInfo.getSuperType();
+
+            final int[] types = new int[interfaces.size() + (superType == null ? 0 : 1)];
+            int i = 0;
+            if (superType != null) types[i++] = id(superType);
+            for (String interfce : interfaces) {
+                types[i++] = id(interfce.replaceFirst("<.*>", ""));
+            }
+            parents[id] = types;
+        }
+
+        final int size = infos.size();
+
+        final int[] counts = new int[size];
+        for (int[] types : parents) {
+            for (int type : types) counts[type]++;
+        }
+
+        final int[][] children = new int[size][];
+        for (int id = 0; id < size; id++) {
+            children[id] = new int[counts[id]];
+            counts[id] = 0;
+        }
+        for (int id = 0; id < classes; id++) {
+            for (int type : parents[id]) children[type][counts[type]++] = id;
+        }
+
+        // super types first, the types only known by name have no parents
+        final int[] pending = new int[size];
+        final int[] order = new int[size];
+        int ordered = 0;
+        for (int id = 0; id < size; id++) {
+            pending[id] = (id < classes) ? parents[id].length : 0;
+            if (pending[id] == 0) order[ordered++] = id;
+        }
+        for (int next = 0; next < ordered; next++) {
+            for (int child : children[order[next]]) {
+                if (--pending[child] == 0) order[ordered++] = child;
+            }
+        }
+
+        // subtypes last, so their sets are done when their super types need them
+        subtypes = new BitSet[size];
+        for (int next = ordered - 1; next >= 0; next--) {
+            final int id = order[next];
+            if (children[id].length == 0) continue;
+
+            final BitSet bits = new BitSet();
+            for (int child : children[id]) {
+                bits.set(child);
+                if (subtypes[child] != null) bits.or(subtypes[child]);
+            }
+            subtypes[id] = bits;
+        }
+    }
+
+    private int id(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = infos.size();
+            ids.put(name, id);
+            infos.add(null);
+        }
+        return id;
+    }
+
+    int size() {
+        return classes;
+    }
+
+    /**
+     * @return the classes and interfaces extending or implementing the type, directly or not
+     */
+    public List<AnnotationFinder.ClassInfo> getSubtypes(String name) {
+        final Integer id = ids.get(name);
+        if (id == null || subtypes[id] == null) return new ArrayList<AnnotationFinder.ClassInfo>();
+
+        return infos(subtypes[id]);
+    }
+
+    /**
+     * @return the classes annotated with the annotation and all their subtypes
+     */
+    public List<AnnotationFinder.ClassInfo> getInheritedAnnotated(String annotation) {
+        final BitSet bits = new BitSet();
+
+        final List<AnnotationFinder.Info> infos = annotated.get(annotation);
+        if (infos != null) {
+            for (AnnotationFinder.Info info : infos) {
+                if (!(info instanceof AnnotationFinder.ClassInfo)) continue;
+
+                final Integer id = ids.get(info.getName());
+                if (id == null) continue;
+
+                bits.set(id);
+                if (subtypes[id] != null) bits.or(subtypes[id]);
+            }
+        }
+
+        return infos(bits);
+    }
+
+    private List<AnnotationFinder.ClassInfo> infos(BitSet bits) {
+        final List<AnnotationFinder.ClassInfo> found = new ArrayList<AnnotationFinder.ClassInfo>(bits.cardinality());
+        for (int id = bits.nextSetBit(0); id >= 0 && id < classes; id = bits.nextSetBit(id + 1)) {
+            found.add(infos.get(id));
+        }
+        return found;
+    }
+}
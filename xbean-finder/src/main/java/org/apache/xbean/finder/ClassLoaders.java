@@ -27,7 +27,9 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 public final class ClassLoaders {
     private static final boolean DONT_USE_GET_URLS = Boolean.getBoolean("xbean.finder.use.get-resources");
@@ -35,11 +37,64 @@ public final class ClassLoaders {
 
     private static final boolean UNIX = !System.getProperty("os.name").toLowerCase().contains("win");
 
+    /**
+     * The urls found for each class loader, the class loaders are weak keys
+     */
+    private static final Map<ClassLoader, CachedUrls> CACHE = new WeakHashMap<ClassLoader, CachedUrls>();
+
+    /**
+     * The urls of the class loader and of its parents.  The result is cached per class loader
+     * and found again only if a URLClassLoader of the chain got new urls.  Chains holding a class
+     * loader which is neither a URLClassLoader nor the system class loader are not cached since
+     * there is no way to know its urls changed.
+     */
     public static Set<URL> findUrls(final ClassLoader classLoader) throws IOException {
         if (classLoader == null || (SYSTEM.getParent() != null && classLoader == SYSTEM.getParent())) {
             return Collections.emptySet();
         }
 
+        if (!isCacheable(classLoader)) {
+            return discoverUrls(classLoader);
+        }
+
+        final long version = version(classLoader);
+        synchronized (CACHE) {
+            final CachedUrls cached = CACHE.get(classLoader);
+            if (cached != null && cached.version == version) {
+                return new HashSet<URL>(cached.urls);
+            }
+        }
+
+        final Set<URL> urls = discoverUrls(classLoader);
+        synchronized (CACHE) {
+            CACHE.put(classLoader, new CachedUrls(version, new HashSet<URL>(urls)));
+        }
+        return urls;
+    }
+
+    private static boolean isCacheable(final ClassLoader classLoader) {
+        for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent()) {
+            // the parents of the system class loader give no urls
+            if (loader == SYSTEM) return true;
+            if (!URLClassLoader.class.isInstance(loader) || DONT_USE_GET_URLS) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of urls of the URLClassLoaders of the chain, URLClassLoaders can only get more urls
+     */
+    private static long version(ClassLoader classLoader) {
+        long version = 0;
+        for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent()) {
+            if (loader instanceof URLClassLoader) {
+                version += ((URLClassLoader) loader).getURLs().length;
+            }
+        }
+        return version;
+    }
+
+    private static Set<URL> discoverUrls(final ClassLoader classLoader) throws IOException {
         final Set<URL> urls =  new HashSet<URL>();
 
         if (URLClassLoader.class.isInstance(classLoader) && !DONT_USE_GET_URLS) {
@@ -112,6 +167,16 @@ public final class ClassLoaders {
         return set;
     }
 
+    private static final class CachedUrls {
+        private final long version;
+        private final Set<URL> urls;
+
+        private CachedUrls(long version, Set<URL> urls) {
+            this.version = version;
+            this.urls = urls;
+        }
+    }
+
     private ClassLoaders() {
         // no-op
     }
@@ -0,0 +1,300 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A type as written in the generic signature of a class, read without loading
+ * any class.  A type is either a class with its type arguments, an array, a
+ * type variable or a wildcard.
+ *
+ * @version $Rev$ $Date$
+ */
+final class GenericType {
+
+    private static final GenericType UNBOUNDED = new GenericType(null, null, null, '*', Collections.<GenericType>emptyList());
+
+    /** class name, null for arrays, type variables and unbounded wildcards */
+    private final String raw;
+    /** type variable name */
+    private final String variable;
+    /** array component */
+    private final GenericType component;
+    /** '=' for a type, '+' or '-' for bounded wildcards and '*' for the unbounded one */
+    private final char wildcard;
+    private final List<GenericType> arguments;
+
+    private GenericType(String raw, String variable, GenericType component, char wildcard, List<GenericType> arguments) {
+        this.raw = raw;
+        this.variable = variable;
+        this.component = component;
+        this.wildcard = wildcard;
+        this.arguments = arguments;
+    }
+
+    static GenericType raw(String className) {
+        return new GenericType(className, null, null, '=', Collections.<GenericType>emptyList());
+    }
+
+    public String getRaw() {
+        return raw;
+    }
+
+    public List<GenericType> getArguments() {
+        return arguments;
+    }
+
+    /**
+     * @return the type with the type variables replaced by their binding, variables without binding are kept
+     */
+    GenericType substitute(Map<String, GenericType> bindings) {
+        if (bindings.isEmpty()) return this;
+        if (variable != null) {
+            final GenericType bound = bindings.get(variable);
+            if (bound == null) return this;
+            if (wildcard == '=') return bound;
+            return new GenericType(bound.raw, bound.variable, bound.component, wildcard, bound.arguments);
+        }
+        if (component != null) {
+            return new GenericType(null, null, component.substitute(bindings), wildcard, arguments);
+        }
+        if (arguments.isEmpty()) return this;
+
+        final List<GenericType> substituted = new ArrayList<GenericType>(arguments.size());
+        for (GenericType argument : arguments) {
+            substituted.add(argument.substitute(bindings));
+        }
+        return new GenericType(raw, null, null, wildcard, substituted);
+    }
+
+    /**
+     * A type argument given as Class, ParameterizedType or GenericArrayType matches the
+     * same type, a raw Class ignoring the arguments of the type.  WildcardType and
+     * TypeVariable match any argument.  Type variables left unbound by the class match
+     * no concrete argument.
+     *
+     * @return true if the arguments of this type match the given ones, no arguments match any
+     */
+    boolean matches(Type... expected) {
+        if (expected.length == 0) return true;
+        if (arguments.size() != expected.length) return false;
+
+        for (int i = 0; i < expected.length; i++) {
+            if (!arguments.get(i).matches(expected[i])) return false;
+        }
+        return true;
+    }
+
+    private boolean matches(Type expected) {
+        if (expected instanceof WildcardType || expected instanceof TypeVariable) return true;
+        if (variable != null || wildcard != '=') return false;
+
+        if (expected instanceof Class) {
+            final Class<?> clazz = (Class<?>) expected;
+            if (clazz.isArray()) return component != null && component.matches(clazz.getComponentType());
+            return clazz.getName().equals(raw);
+        }
+        if (expected instanceof GenericArrayType) {
+            return component != null && component.matches(((GenericArrayType) expected).getGenericComponentType());
+        }
+        if (expected instanceof ParameterizedType) {
+            final ParameterizedType parameterized = (ParameterizedType) expected;
+            if (!((Class<?>) parameterized.getRawType()).getName().equals(raw)) return false;
+            return matches(parameterized.getActualTypeArguments());
+        }
+        return false;
+    }
+
+    public String toString() {
+        if (wildcard == '*') return "?";
+        final StringBuilder string = new StringBuilder();
+        if (wildcard == '+') string.append("? extends ");
+        if (wildcard == '-') string.append("? super ");
+        if (variable != null) return string.append(variable).toString();
+        if (component != null) return string.append(component).append("[]").toString();
+        string.append(raw);
+        if (!arguments.isEmpty()) {
+            string.append('<');
+            for (int i = 0; i < arguments.size(); i++) {
+                if (i > 0) string.append(", ");
+                string.append(arguments.get(i));
+            }
+            string.append('>');
+        }
+        return string.toString();
+    }
+
+    /**
+     * The type parameters and the super types of a class, from its generic signature
+     */
+    static final class Declaration {
+        private final List<String> parameters;
+        private final List<GenericType> supertypes;
+
+        Declaration(List<String> parameters, List<GenericType> supertypes) {
+            this.parameters = parameters;
+            this.supertypes = supertypes;
+        }
+
+        /**
+         * @return the super class followed by the interfaces
+         */
+        List<GenericType> getSupertypes() {
+            return supertypes;
+        }
+
+        /**
+         * @return the bindings of the type parameters to the arguments the type is used with,
+         * none if it is used as a raw type
+         */
+        Map<String, GenericType> bind(GenericType use) {
+            if (use.arguments.size() != parameters.size()) return Collections.emptyMap();
+
+            final Map<String, GenericType> bindings = new HashMap<String, GenericType>();
+            for (int i = 0; i < parameters.size(); i++) {
+                bindings.put(parameters.get(i), use.arguments.get(i));
+            }
+            return bindings;
+        }
+    }
+
+    /**
+     * @param signature the generic signature of a class, as in the Signature attribute
+     */
+    static Declaration parse(String signature) {
+        return new Parser(signature).classSignature();
+    }
+
+    private static final class Parser {
+        private final String signature;
+        private int position;
+
+        private Parser(String signature) {
+            this.signature = signature;
+        }
+
+        private Declaration classSignature() {
+            final List<String> parameters = new ArrayList<String>();
+            if (peek() == '<') {
+                position++;
+                while (peek() != '>') {
+                    parameters.add(identifier(':'));
+
+                    // the class bound is empty when there are only interface bounds
+                    position++;
+                    if (peek() != ':') referenceType();
+                    while (peek() == ':') {
+                        position++;
+                        referenceType();
+                    }
+                }
+                position++;
+            }
+
+            final List<GenericType> supertypes = new ArrayList<GenericType>();
+            while (position < signature.length()) {
+                supertypes.add(referenceType());
+            }
+            return new Declaration(parameters, supertypes);
+        }
+
+        private GenericType referenceType() {
+            final char c = signature.charAt(position++);
+            switch (c) {
+                case 'L': return classType();
+                case 'T': return new GenericType(null, identifier(';'), null, '=', Collections.<GenericType>emptyList());
+                case '[': return new GenericType(null, null, javaType(), '=', Collections.<GenericType>emptyList());
+                default: throw new IllegalArgumentException("Invalid signature " + signature + " at " + (position - 1));
+            }
+        }
+
+        private GenericType javaType() {
+            final char c = peek();
+            switch (c) {
+                case 'B': position++; return raw("byte");
+                case 'C': position++; return raw("char");
+                case 'D': position++; return raw("double");
+                case 'F': position++; return raw("float");
+                case 'I': position++; return raw("int");
+                case 'J': position++; return raw("long");
+                case 'S': position++; return raw("short");
+                case 'Z': position++; return raw("boolean");
+                default: return referenceType();
+            }
+        }
+
+        private GenericType classType() {
+            final StringBuilder name = new StringBuilder();
+            List<GenericType> arguments = Collections.emptyList();
+            while (true) {
+                final char c = signature.charAt(position++);
+                if (c == ';') break;
+                if (c == '/') {
+                    name.append('.');
+                } else if (c == '.') {
+                    // inner class of a parameterized outer class, only the arguments of the inner one are kept
+                    name.append('$');
+                    arguments = Collections.emptyList();
+                } else if (c == '<') {
+                    arguments = new ArrayList<GenericType>();
+                    while (peek() != '>') {
+                        arguments.add(typeArgument());
+                    }
+                    position++;
+                } else {
+                    name.append(c);
+                }
+            }
+            return new GenericType(name.toString(), null, null, '=', arguments);
+        }
+
+        private GenericType typeArgument() {
+            final char c = peek();
+            if (c == '*') {
+                position++;
+                return UNBOUNDED;
+            }
+            if (c == '+' || c == '-') {
+                position++;
+                final GenericType bound = referenceType();
+                return new GenericType(bound.raw, bound.variable, bound.component, c, bound.arguments);
+            }
+            return referenceType();
+        }
+
+        private String identifier(char end) {
+            final int index = signature.indexOf(end, position);
+            final String identifier = signature.substring(position, index);
+            position = (end == ';') ? index + 1 : index;
+            return identifier;
+        }
+
+        private char peek() {
+            return signature.charAt(position);
+        }
+    }
+}
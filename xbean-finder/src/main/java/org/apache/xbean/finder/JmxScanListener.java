@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registers the statistics of each scanned archive as an MBean named
+ * org.apache.xbean.finder:type=ScanStatistics,finder="id of the listener",name="location of the archive"
+ * and the ones of the linking as type=LinkStatistics.  The id keeps apart the MBeans of
+ * finders scanning the same archives, it defaults to one unique to the listener.  An
+ * archive scanned again by the same listener replaces the MBean of the previous scan,
+ * the MBeans registered by other listeners are never touched.
+ *
+ * @version $Rev$ $Date$
+ */
+public class JmxScanListener implements ScanListener {
+
+    public static final String DOMAIN = "org.apache.xbean.finder";
+
+    private static final AtomicInteger ids = new AtomicInteger();
+
+    private final MBeanServer server;
+    private final String finder;
+    private final List<ObjectName> registered = new ArrayList<ObjectName>();
+
+    public JmxScanListener() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public JmxScanListener(MBeanServer server) {
+        this(server, "finder-" + ids.incrementAndGet());
+    }
+
+    /**
+     * @param finder the id of the finder in the names of the MBeans
+     */
+    public JmxScanListener(MBeanServer server, String finder) {
+        this.server = server;
+        this.finder = finder;
+    }
+
+    /**
+     * @return the id of the finder in the names of the MBeans
+     */
+    public String getFinder() {
+        return finder;
+    }
+
+    public void scanned(ScanStatistics statistics) {
+        register("ScanStatistics", statistics);
+    }
+
+    public void linked(ScanStatistics statistics) {
+        register("LinkStatistics", statistics);
+    }
+
+    public void failed(Archive archive, String className, Throwable cause) {
+        // counted in the statistics
+    }
+
+    /**
+     * Unregisters the MBeans registered by this listener
+     */
+    public synchronized void unregister() {
+        for (ObjectName name : registered) {
+            try {
+                if (server.isRegistered(name)) server.unregisterMBean(name);
+            } catch (JMException e) {
+                // already gone
+            }
+        }
+        registered.clear();
+    }
+
+    private synchronized void register(String type, ScanStatistics statistics) {
+        try {
+            final ObjectName name = new ObjectName(DOMAIN + ":type=" + type + ",finder=" + ObjectName.quote(finder) + ",name=" + ObjectName.quote(statistics.getName()));
+            if (registered.remove(name)) {
+                try {
+                    server.unregisterMBean(name);
+                } catch (InstanceNotFoundException e) {
+                    // unregistered by someone else
+                }
+            }
+            // fails if another listener registered the name, given the same id
+            server.registerMBean(statistics, name);
+            registered.add(name);
+        } catch (JMException e) {
+            throw new IllegalStateException("Can't register the statistics of " + statistics.getName(), e);
+        }
+    }
+}
@@ -21,15 +21,21 @@ import java.lang.annotation.Documented;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Arrays.asList;
 
@@ -37,9 +43,30 @@ import static java.util.Arrays.asList;
 * @version $Rev$ $Date$
 */
 public class MetaAnnotatedElement<T extends AnnotatedElement> implements  AnnotatedElement, MetaAnnotated<T> {
+
+    /**
+     * The meta annotations declared on each annotation type, an empty list if it is not a meta annotation
+     */
+    private static final Cache<Class<? extends Annotation>, List<Annotation>> declaredMetaAnnotations = new Cache<Class<? extends Annotation>, List<Annotation>>();
+
+    /**
+     * The unrolled annotations of each class, constructor, method and field
+     */
+    private static final Cache<AnnotatedElement, Unrolled> unrolled = new Cache<AnnotatedElement, Unrolled>();
+
+    /**
+     * The number of elements unrolled rather than found in the cache
+     */
+    private static final AtomicInteger computed = new AtomicInteger();
+
     protected final Map<Class<? extends Annotation>, MetaAnnotation<?>> annotations = new HashMap<Class<? extends Annotation>, MetaAnnotation<?>>();
     protected final T target;
 
+    /**
+     * The cached values this element was built from, they stay cached as long as it is used
+     */
+    private final Object retained;
+
     public MetaAnnotatedElement(T element) {
         this(element, unroll(element));
     }
@@ -47,6 +74,11 @@ public class MetaAnnotatedElement<T extends AnnotatedElement> implements  Annota
     MetaAnnotatedElement(T target, Map<Class<? extends Annotation>, MetaAnnotation<?>> annotations) {
         this.target = target;
         this.annotations.putAll(annotations);
+        this.retained = (annotations instanceof Copy) ? ((Copy) annotations).retained : null;
+    }
+
+    static int computed() {
+        return computed.get();
     }
 
     public T get() {
@@ -97,10 +129,17 @@ public class MetaAnnotatedElement<T extends AnnotatedElement> implements  Annota
     }
 
 
-    private static void unroll(Class<? extends Annotation> clazz, int depth, Map<Class<? extends Annotation>, MetaAnnotation<?>> found) {
-        if (!isMetaAnnotation(clazz)) return;
+    private static void unroll(Class<? extends Annotation> clazz, int depth, Map<Class<? extends Annotation>, MetaAnnotation<?>> found, Map<Object, Object> retained) {
+        final Map<Class<? extends Annotation>, List<Annotation>> cached = declaredMetaAnnotations.values(clazz);
+        retained.put(cached, cached);
+
+        List<Annotation> metaAnnotations = cached.get(clazz);
+        if (metaAnnotations == null) {
+            metaAnnotations = isMetaAnnotation(clazz) ? new ArrayList<Annotation>(getDeclaredMetaAnnotations(clazz)) : Collections.<Annotation>emptyList();
+            cached.put(clazz, metaAnnotations);
+        }
 
-        for (Annotation annotation : getDeclaredMetaAnnotations(clazz)) {
+        for (Annotation annotation : metaAnnotations) {
             Class<? extends Annotation> type = annotation.annotationType();
 
             MetaAnnotation existing = found.get(type);
@@ -113,7 +152,7 @@ public class MetaAnnotatedElement<T extends AnnotatedElement> implements  Annota
 
                     found.put(type, new MetaAnnotation(annotation, depth));
 
-                    unroll(type, depth + 1, found);
+                    unroll(type, depth + 1, found, retained);
 
                 } else if (existing.getDepth() < depth) {
 
@@ -136,7 +175,7 @@ public class MetaAnnotatedElement<T extends AnnotatedElement> implements  Annota
 
                 found.put(type, new MetaAnnotation(annotation, depth));
 
-                unroll(type, depth + 1, found);
+                unroll(type, depth + 1, found, retained);
 
             }
         }
@@ -254,17 +293,53 @@ public class MetaAnnotatedElement<T extends AnnotatedElement> implements  Annota
     }
 
     protected static Map<Class<? extends Annotation>, MetaAnnotation<?>> unroll(AnnotatedElement element) {
-        return unroll(element.getDeclaredAnnotations());
+        final Class<?> owner = owner(element);
+        if (owner == null) return unroll(element.getDeclaredAnnotations());
+
+        final Map<AnnotatedElement, Unrolled> cached = unrolled.values(owner);
+        Unrolled value = cached.get(element);
+        if (value == null) {
+            final Map<Object, Object> retained = new IdentityHashMap<Object, Object>();
+            value = new Unrolled(unroll(element.getDeclaredAnnotations(), retained), retained.keySet().toArray());
+            cached.put(element, value);
+        }
+
+        // the instances get copies, the cached meta annotations are never handed out
+        final Copy copy = new Copy(cached);
+        for (Map.Entry<Class<? extends Annotation>, MetaAnnotation<?>> entry : value.annotations.entrySet()) {
+            copy.put(entry.getKey(), copy(entry.getValue()));
+        }
+        return copy;
+    }
+
+    private static <A extends Annotation> MetaAnnotation<A> copy(MetaAnnotation<A> metaAnnotation) {
+        final MetaAnnotation<A> copy = new MetaAnnotation<A>(metaAnnotation.get(), metaAnnotation.getDepth());
+        for (MetaAnnotation<A> conflict : metaAnnotation.getConflicts()) {
+            copy.getConflicts().add(copy(conflict));
+        }
+        return copy;
+    }
+
+    private static Class<?> owner(AnnotatedElement element) {
+        if (element instanceof Class) return (Class<?>) element;
+        if (element instanceof Member) return ((Member) element).getDeclaringClass();
+        return null;
     }
 
     protected static Map<Class<? extends Annotation>, MetaAnnotation<?>> unroll(Annotation[] annotations) {
+        return unroll(annotations, new IdentityHashMap<Object, Object>());
+    }
+
+    private static Map<Class<? extends Annotation>, MetaAnnotation<?>> unroll(Annotation[] annotations, Map<Object, Object> retained) {
+        computed.incrementAndGet();
+
         final Map<Class<? extends Annotation>, MetaAnnotation<?>> map = new HashMap<Class<? extends Annotation>, MetaAnnotation<?>>();
 
         for (Annotation annotation : annotations) {
 
             map.put(annotation.annotationType(), new MetaAnnotation(annotation, 0));
 
-            unroll(annotation.annotationType(), 1, map);
+            unroll(annotation.annotationType(), 1, map, retained);
 
         }
 
@@ -289,4 +364,59 @@ public class MetaAnnotatedElement<T extends AnnotatedElement> implements  Annota
         }
         return unrolledParameters;
     }
+
+    /**
+     * The unrolled annotations of an element, with the cached meta annotations of the
+     * annotation types it was unrolled from so they are kept as long as it is
+     */
+    private static final class Unrolled {
+        private final Map<Class<? extends Annotation>, MetaAnnotation<?>> annotations;
+        private final Object[] retained;
+
+        private Unrolled(Map<Class<? extends Annotation>, MetaAnnotation<?>> annotations, Object[] retained) {
+            this.annotations = annotations;
+            this.retained = retained;
+        }
+    }
+
+    /**
+     * The copy of the unrolled annotations given to an element, holding the cached values
+     * of its class
+     */
+    private static final class Copy extends HashMap<Class<? extends Annotation>, MetaAnnotation<?>> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Object retained;
+
+        private Copy(Object retained) {
+            this.retained = retained;
+        }
+    }
+
+    /**
+     * A cache of the values computed for a class or its members.
+     * <p/>
+     * The classes are weak keys and their values are weak references: the values refer to
+     * the class and to the annotation types of its class loader, a strong or soft reference
+     * would keep the class loader until the heap runs low.  The values are kept by the
+     * elements using them, see Unrolled and Copy.
+     */
+    private static final class Cache<K, V> {
+        private final Map<Class<?>, WeakReference<Map<K, V>>> classes = new WeakHashMap<Class<?>, WeakReference<Map<K, V>>>();
+
+        /**
+         * @return the values of the class, cached as long as the map is referenced
+         */
+        public Map<K, V> values(Class<?> owner) {
+            synchronized (classes) {
+                final WeakReference<Map<K, V>> reference = classes.get(owner);
+                Map<K, V> values = (reference == null) ? null : reference.get();
+                if (values == null) {
+                    values = new ConcurrentHashMap<K, V>();
+                    classes.put(owner, new WeakReference<Map<K, V>>(values));
+                }
+                return values;
+            }
+        }
+    }
 }
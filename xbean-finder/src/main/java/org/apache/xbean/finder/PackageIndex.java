@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The package tree of the classes of an AnnotationFinder.
+ * <p/>
+ * Every package known to the finder is a node holding its classes and its direct
+ * sub packages, so the classes of a package, or of a package and all of its sub
+ * packages, are found by walking the part of the tree under that package only.
+ * The tree is kept up to date as the finder reads classes.  Packages which hold no
+ * class but are the parent of one are part of the tree, "org" is a node as soon as
+ * "org.acme.foo" is.
+ *
+ * @version $Rev$ $Date$
+ */
+public class PackageIndex {
+
+    private final Map<String, Node> packages = new HashMap<String, Node>();
+    private final Node root = new Node(null, "");
+    private int size;
+
+    PackageIndex() {
+        packages.put(root.name, root);
+    }
+
+    PackageIndex(Collection<AnnotationFinder.ClassInfo> classInfos) {
+        this();
+        for (AnnotationFinder.ClassInfo classInfo : classInfos) {
+            add(classInfo);
+        }
+    }
+
+    void add(AnnotationFinder.ClassInfo classInfo) {
+        final Node node = node(classInfo.getPackageName());
+        if (node.classes.put(classInfo.getName(), classInfo) == null) size++;
+    }
+
+    void remove(AnnotationFinder.ClassInfo classInfo) {
+        final Node node = packages.get(classInfo.getPackageName());
+        if (node == null || node.classes.remove(classInfo.getName()) == null) return;
+
+        size--;
+        prune(node);
+    }
+
+    /**
+     * @return the number of classes in the tree
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean containsPackage(String packageName) {
+        return packages.containsKey(packageName);
+    }
+
+    /**
+     * @param packageName the package, "" for the default package
+     * @param recursive also return the classes of the sub packages
+     * @return the classes of the package, an empty list if it is unknown
+     */
+    public List<AnnotationFinder.ClassInfo> getClasses(String packageName, boolean recursive) {
+        final Node node = packages.get(packageName);
+        if (node == null) return Collections.emptyList();
+
+        final List<AnnotationFinder.ClassInfo> classes = new ArrayList<AnnotationFinder.ClassInfo>(node.classes.values());
+        if (recursive) collect(node, classes);
+        return classes;
+    }
+
+    /**
+     * @param packageName the package, "" for the top level packages
+     * @return the names of the direct sub packages, sorted
+     */
+    public Set<String> getSubpackages(String packageName) {
+        final Node node = packages.get(packageName);
+        if (node == null) return Collections.emptySet();
+        return Collections.unmodifiableSet(node.children.keySet());
+    }
+
+    private void collect(Node node, List<AnnotationFinder.ClassInfo> classes) {
+        for (Node child : node.children.values()) {
+            classes.addAll(child.classes.values());
+            collect(child, classes);
+        }
+    }
+
+    private Node node(String packageName) {
+        Node node = packages.get(packageName);
+        if (node != null) return node;
+
+        final int dot = packageName.lastIndexOf('.');
+        final Node parent = node(dot > 0 ? packageName.substring(0, dot) : "");
+
+        node = new Node(parent, packageName);
+        parent.children.put(packageName, node);
+        packages.put(packageName, node);
+        return node;
+    }
+
+    private void prune(Node node) {
+        while (node != root && node.classes.isEmpty() && node.children.isEmpty()) {
+            node.parent.children.remove(node.name);
+            packages.remove(node.name);
+            node = node.parent;
+        }
+    }
+
+    private static final class Node {
+        private final Node parent;
+        private final String name;
+        private final Map<String, AnnotationFinder.ClassInfo> classes = new LinkedHashMap<String, AnnotationFinder.ClassInfo>();
+        private final Map<String, Node> children = new TreeMap<String, Node>();
+
+        private Node(Node parent, String name) {
+            this.parent = parent;
+            this.name = name;
+        }
+    }
+}
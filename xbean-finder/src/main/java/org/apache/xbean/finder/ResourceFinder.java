@@ -16,11 +16,14 @@
  */
 package org.apache.xbean.finder;
 
-import java.io.BufferedInputStream;
+import org.apache.xbean.finder.util.Files;
+
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
 import java.net.JarURLConnection;
 import java.net.MalformedURLException;
@@ -30,11 +33,18 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -47,6 +57,16 @@ public class ResourceFinder {
     private final String path;
     private final ClassLoader classLoader;
     private final List<String> resourcesNotLoaded = new ArrayList<String>();
+    private ConcurrentMap<String, JarIndex> jarIndexes;
+    private ExecutorService executor;
+    private ConcurrentMap<String, Content> contentCache;
+
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[8192];
+        }
+    };
 
     public ResourceFinder(URL... urls) {
         this(null, Thread.currentThread().getContextClassLoader(), urls);
@@ -96,6 +116,47 @@ public class ResourceFinder {
         return (file.length() > 0 && file.charAt(file.length() - 1) == '/') || new File(file).isDirectory(); // with surefire first test can easily fail
     }
 
+    /**
+     * Reads the entries of each jar once, the first time it is searched, and answers all
+     * the later lookups and directory listings of that jar from memory.
+     * <p/>
+     * Directories are still looked up on the file system.  The index is not refreshed,
+     * a jar changed after it was indexed is seen as it was.
+     *
+     * @return this finder
+     */
+    public ResourceFinder enableIndex() {
+        if (jarIndexes == null) {
+            jarIndexes = new ConcurrentHashMap<String, JarIndex>();
+        }
+        return this;
+    }
+
+    /**
+     * Reads the resources found by the findAll*, findAvailable*, mapAll* and mapAvailable*
+     * methods concurrently with the given executor.  The results are the same as when the
+     * resources are read one after the other.
+     *
+     * @return this finder
+     */
+    public ResourceFinder enableParallelReads(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Keeps the content of the resources read from a file or a jar file.  A resource is read
+     * again only if the last modified time of its file changed.
+     *
+     * @return this finder
+     */
+    public ResourceFinder enableContentCache() {
+        if (contentCache == null) {
+            contentCache = new ConcurrentHashMap<String, Content>();
+        }
+        return this;
+    }
+
     /**
      * Returns a list of resources that could not be loaded in the last invoked findAvailable* or
      * mapAvailable* methods.
@@ -180,10 +241,10 @@ public class ResourceFinder {
 
         List<String> strings = new ArrayList<String>();
 
-        Enumeration<URL> resources = getResources(fulluri);
-        while (resources.hasMoreElements()) {
-            URL url = resources.nextElement();
-            String string = readContents(url);
+        List<URL> resources = Collections.list(getResources(fulluri));
+        List<Object> contents = readAll(resources);
+        for (Object content : contents) {
+            String string = readContents(content);
             strings.add(string);
         }
         return strings;
@@ -204,11 +265,12 @@ public class ResourceFinder {
 
         List<String> strings = new ArrayList<String>();
 
-        Enumeration<URL> resources = getResources(fulluri);
-        while (resources.hasMoreElements()) {
-            URL url = resources.nextElement();
+        List<URL> resources = Collections.list(getResources(fulluri));
+        List<Object> contents = readAll(resources);
+        for (int i = 0; i < resources.size(); i++) {
+            URL url = resources.get(i);
             try {
-                String string = readContents(url);
+                String string = readContents(contents.get(i));
                 strings.add(string);
             } catch (IOException notAvailable) {
                 resourcesNotLoaded.add(url.toExternalForm());
@@ -244,11 +306,10 @@ public class ResourceFinder {
     public Map<String, String> mapAllStrings(String uri) throws IOException {
         Map<String, String> strings = new HashMap<String, String>();
         Map<String, URL> resourcesMap = getResourcesMap(uri);
-        for (Iterator iterator = resourcesMap.entrySet().iterator(); iterator.hasNext();) {
-            Map.Entry entry = (Map.Entry) iterator.next();
-            String name = (String) entry.getKey();
-            URL url = (URL) entry.getValue();
-            String value = readContents(url);
+        Map<String, Object> contents = readAll(resourcesMap);
+        for (Map.Entry<String, Object> entry : contents.entrySet()) {
+            String name = entry.getKey();
+            String value = readContents(entry.getValue());
             strings.put(name, value);
         }
         return strings;
@@ -283,15 +344,14 @@ public class ResourceFinder {
         resourcesNotLoaded.clear();
         Map<String, String> strings = new HashMap<String, String>();
         Map<String, URL> resourcesMap = getResourcesMap(uri);
-        for (Iterator iterator = resourcesMap.entrySet().iterator(); iterator.hasNext();) {
-            Map.Entry entry = (Map.Entry) iterator.next();
-            String name = (String) entry.getKey();
-            URL url = (URL) entry.getValue();
+        Map<String, Object> contents = readAll(resourcesMap);
+        for (Map.Entry<String, Object> entry : contents.entrySet()) {
+            String name = entry.getKey();
             try {
-                String value = readContents(url);
+                String value = readContents(entry.getValue());
                 strings.put(name, value);
             } catch (IOException notAvailable) {
-                resourcesNotLoaded.add(url.toExternalForm());
+                resourcesNotLoaded.add(resourcesMap.get(name).toExternalForm());
             }
         }
         return strings;
@@ -687,10 +747,10 @@ public class ResourceFinder {
 
         List<Properties> properties = new ArrayList<Properties>();
 
-        Enumeration<URL> resources = getResources(fulluri);
-        while (resources.hasMoreElements()) {
-            URL url = resources.nextElement();
-            Properties props = loadProperties(url);
+        List<URL> resources = Collections.list(getResources(fulluri));
+        List<Object> contents = readAll(resources);
+        for (Object content : contents) {
+            Properties props = loadProperties(content);
             properties.add(props);
         }
         return properties;
@@ -721,11 +781,12 @@ public class ResourceFinder {
 
         List<Properties> properties = new ArrayList<Properties>();
 
-        Enumeration<URL> resources = getResources(fulluri);
-        while (resources.hasMoreElements()) {
-            URL url = resources.nextElement();
+        List<URL> resources = Collections.list(getResources(fulluri));
+        List<Object> contents = readAll(resources);
+        for (int i = 0; i < resources.size(); i++) {
+            URL url = resources.get(i);
             try {
-                Properties props = loadProperties(url);
+                Properties props = loadProperties(contents.get(i));
                 properties.add(props);
             } catch (Exception notAvailable) {
                 resourcesNotLoaded.add(url.toExternalForm());
@@ -758,11 +819,10 @@ public class ResourceFinder {
     public Map<String, Properties> mapAllProperties(String uri) throws IOException {
         Map<String, Properties> propertiesMap = new HashMap<String, Properties>();
         Map<String, URL> map = getResourcesMap(uri);
-        for (Iterator iterator = map.entrySet().iterator(); iterator.hasNext();) {
-            Map.Entry entry = (Map.Entry) iterator.next();
-            String string = (String) entry.getKey();
-            URL url = (URL) entry.getValue();
-            Properties properties = loadProperties(url);
+        Map<String, Object> contents = readAll(map);
+        for (Map.Entry<String, Object> entry : contents.entrySet()) {
+            String string = entry.getKey();
+            Properties properties = loadProperties(entry.getValue());
             propertiesMap.put(string, properties);
         }
         return propertiesMap;
@@ -794,15 +854,14 @@ public class ResourceFinder {
         resourcesNotLoaded.clear();
         Map<String, Properties> propertiesMap = new HashMap<String, Properties>();
         Map<String, URL> map = getResourcesMap(uri);
-        for (Iterator iterator = map.entrySet().iterator(); iterator.hasNext();) {
-            Map.Entry entry = (Map.Entry) iterator.next();
-            String string = (String) entry.getKey();
-            URL url = (URL) entry.getValue();
+        Map<String, Object> contents = readAll(map);
+        for (Map.Entry<String, Object> entry : contents.entrySet()) {
+            String string = entry.getKey();
             try {
-                Properties properties = loadProperties(url);
+                Properties properties = loadProperties(entry.getValue());
                 propertiesMap.put(string, properties);
             } catch (Exception notAvailable) {
-                resourcesNotLoaded.add(url.toExternalForm());
+                resourcesNotLoaded.add(map.get(string).toExternalForm());
             }
         }
         return propertiesMap;
@@ -827,7 +886,11 @@ public class ResourceFinder {
             URL location = urls.nextElement();
 
             try {
-                if (location.getProtocol().equals("jar")) {
+                if (location.getProtocol().equals("jar") && jarIndexes != null) {
+
+                    readIndexedEntries(location, resources);
+
+                } else if (location.getProtocol().equals("jar")) {
 
                     readJarEntries(location, basePath, resources);
 
@@ -882,44 +945,159 @@ public class ResourceFinder {
         }
     }
 
-    private Properties loadProperties(URL resource) throws IOException {
-        InputStream in = resource.openStream();
+    private void readIndexedEntries(URL location, Map<String, URL> resources) throws IOException {
+        final String file = location.getFile();
+        final int separator = file.indexOf("!/");
+        if (separator == -1) return;
 
-        BufferedInputStream reader = null;
-        try {
-            reader = new BufferedInputStream(in);
-            Properties properties = new Properties();
-            properties.load(reader);
+        String directory = decode(file.substring(separator + 2));
+        if (directory.length() > 0 && !directory.endsWith("/")) {
+            directory += "/";
+        }
 
-            return properties;
+        for (String name : index(file.substring(0, separator)).list(directory)) {
+            resources.put(name, new URL(location, name));
+        }
+    }
+
+    private JarIndex index(String jarFileUrl) throws IOException {
+        JarIndex index = jarIndexes.get(jarFileUrl);
+        if (index != null) return index;
+
+        final JarURLConnection juc = (JarURLConnection) new URL("jar", "", jarFileUrl + "!/").openConnection();
+        final JarFile jarFile = juc.getJarFile();
+        try {
+            index = new JarIndex(jarFile);
         } finally {
-            try {
-                in.close();
-                reader.close();
-            } catch (Exception e) {
+            if (!juc.getUseCaches()) {
+                try {
+                    jarFile.close();
+                } catch (Exception e) {
+                }
             }
         }
+
+        final JarIndex existing = jarIndexes.putIfAbsent(jarFileUrl, index);
+        return (existing == null) ? index : existing;
+    }
+
+    private Properties loadProperties(URL resource) throws IOException {
+        return loadProperties(read(resource));
+    }
+
+    private Properties loadProperties(Object content) throws IOException {
+        Properties properties = new Properties();
+        properties.load(new ByteArrayInputStream(bytes(content)));
+        return properties;
     }
 
     private String readContents(URL resource) throws IOException {
-        InputStream in = resource.openStream();
-        BufferedInputStream reader = null;
-        StringBuffer sb = new StringBuffer();
+        return readContents(read(resource));
+    }
 
-        try {
-            reader = new BufferedInputStream(in);
+    private String readContents(Object content) throws IOException {
+        // one char per byte, as the resources were always read
+        return new String(bytes(content), "ISO-8859-1").trim();
+    }
+
+    private static byte[] bytes(Object content) throws IOException {
+        if (content instanceof IOException) throw (IOException) content;
+        return (byte[]) content;
+    }
 
-            int b = reader.read();
-            while (b != -1) {
-                sb.append((char) b);
-                b = reader.read();
+    /**
+     * @return the content of each resource, or the IOException reading it, in the order of the resources
+     */
+    private List<Object> readAll(final List<URL> resources) throws IOException {
+        final List<Object> contents = new ArrayList<Object>(resources.size());
+        if (executor == null || resources.size() < 2) {
+            for (URL resource : resources) {
+                contents.add(readOrFail(resource));
             }
+            return contents;
+        }
 
-            return sb.toString().trim();
+        final List<Future<Object>> futures = new ArrayList<Future<Object>>(resources.size());
+        try {
+            for (final URL resource : resources) {
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() {
+                        return readOrFail(resource);
+                    }
+                }));
+            }
+            for (Future<Object> future : futures) {
+                contents.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted reading " + resources);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        } finally {
+            for (Future<Object> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return contents;
+    }
+
+    private Map<String, Object> readAll(Map<String, URL> resources) throws IOException {
+        final List<String> names = new ArrayList<String>(resources.keySet());
+        final List<URL> urls = new ArrayList<URL>(names.size());
+        for (String name : names) {
+            urls.add(resources.get(name));
+        }
+
+        final List<Object> contents = readAll(urls);
+        final Map<String, Object> map = new HashMap<String, Object>();
+        for (int i = 0; i < names.size(); i++) {
+            map.put(names.get(i), contents.get(i));
+        }
+        return map;
+    }
+
+    private Object readOrFail(URL resource) {
+        try {
+            return read(resource);
+        } catch (IOException e) {
+            return e;
+        }
+    }
+
+    private byte[] read(URL resource) throws IOException {
+        final File file = (contentCache == null) ? null : Files.toFile(resource);
+        final long lastModified = (file == null) ? 0 : file.lastModified();
+
+        if (lastModified != 0) {
+            final Content content = contentCache.get(resource.toExternalForm());
+            if (content != null && content.lastModified == lastModified) return content.bytes;
+        }
+
+        final byte[] bytes = readBytes(resource);
+
+        if (lastModified != 0) {
+            contentCache.put(resource.toExternalForm(), new Content(lastModified, bytes));
+        }
+        return bytes;
+    }
+
+    private static byte[] readBytes(URL resource) throws IOException {
+        final InputStream in = resource.openStream();
+        try {
+            final byte[] buffer = BUFFER.get();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
         } finally {
             try {
                 in.close();
-                reader.close();
             } catch (Exception e) {
             }
         }
@@ -955,7 +1133,33 @@ public class ResourceFinder {
 
             try {
                 String protocol = currentUrl.getProtocol();
-                if (protocol.equals("jar")) {
+                if (protocol.equals("jar") && jarIndexes != null) {
+                    final String file = currentUrl.getFile();
+                    final int separator = file.indexOf("!/");
+                    if (separator == -1) {
+                        // Invalid URL, don't look here again
+                        search[i] = null;
+                        continue;
+                    }
+
+                    final JarIndex index;
+                    try {
+                        index = index(file.substring(0, separator));
+                    } catch (IOException e) {
+                        // Don't look for this jar file again
+                        search[i] = null;
+                        throw e;
+                    }
+
+                    final String entryName = file.substring(separator + 2) + resourceName;
+                    if (entryName.equals("META-INF/") && index.contains("META-INF/MANIFEST.MF")) {
+                        return targetURL(currentUrl, "META-INF/MANIFEST.MF");
+                    }
+                    if (index.contains(entryName)) {
+                        return targetURL(currentUrl, resourceName);
+                    }
+
+                } else if (protocol.equals("jar")) {
                     /*
                     * If the connection for currentUrl or resURL is
                     * used, getJarFile() will throw an exception if the
@@ -974,8 +1178,6 @@ public class ResourceFinder {
                     }
 
                     try {
-                        juc = (JarURLConnection) new URL("jar", "", jarURL.toExternalForm() + "!/").openConnection();                        
-                        jarFile = juc.getJarFile();
                         String entryName;
                         if (currentUrl.getFile().endsWith("!/")) {
                             entryName = resourceName;
@@ -1121,4 +1323,53 @@ public class ResourceFinder {
         return result.toString();
     }
 
+    /**
+     * The entry names of a jar and the files of each of its directories
+     */
+    private static final class JarIndex {
+        private final Set<String> entries = new HashSet<String>();
+        private final Map<String, List<String>> directories = new HashMap<String, List<String>>();
+
+        private JarIndex(JarFile jarFile) {
+            final Enumeration<JarEntry> enumeration = jarFile.entries();
+            while (enumeration != null && enumeration.hasMoreElements()) {
+                final JarEntry entry = enumeration.nextElement();
+                final String name = entry.getName();
+                entries.add(name);
+
+                if (entry.isDirectory()) continue;
+
+                final int slash = name.lastIndexOf('/');
+                final String directory = name.substring(0, slash + 1);
+                List<String> files = directories.get(directory);
+                if (files == null) {
+                    files = new ArrayList<String>();
+                    directories.put(directory, files);
+                }
+                files.add(name.substring(slash + 1));
+            }
+        }
+
+        /**
+         * Same lookup as JarFile.getEntry, which also finds "name/" for "name"
+         */
+        private boolean contains(String name) {
+            return entries.contains(name) || entries.contains(name + "/");
+        }
+
+        private List<String> list(String directory) {
+            final List<String> files = directories.get(directory);
+            return (files == null) ? Collections.<String>emptyList() : files;
+        }
+    }
+
+    private static final class Content {
+        private final long lastModified;
+        private final byte[] bytes;
+
+        private Content(long lastModified, byte[] bytes) {
+            this.lastModified = lastModified;
+            this.bytes = bytes;
+        }
+    }
 }
@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+
+/**
+ * Receives the statistics of the scans done by an AnnotationFinder.
+ * <p/>
+ * With a parallel scan failed is called from the threads of the executor,
+ * the other methods are always called from the thread using the finder.
+ *
+ * @version $Rev$ $Date$
+ */
+public interface ScanListener {
+
+    /**
+     * Called once per archive read by the finder, CompositeArchive and FilteredArchive
+     * are looked into so the numbers are the ones of the jars and directories they hold.
+     */
+    void scanned(ScanStatistics statistics);
+
+    /**
+     * Called after link() and each of the enable methods with the classes read since
+     * the scan to link the ones of the archive to their parents and interfaces.  The
+     * numbers add up over the calls.
+     */
+    void linked(ScanStatistics statistics);
+
+    /**
+     * @param archive the archive the class was read from, the archive of the finder for the classes read while linking
+     * @param className the class which could not be read
+     * @param cause why it could not be read
+     */
+    void failed(Archive archive, String className, Throwable cause);
+}
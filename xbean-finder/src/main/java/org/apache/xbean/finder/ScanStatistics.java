@@ -0,0 +1,186 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.apache.xbean.finder.archive.MappedJarArchive;
+import org.apache.xbean.finder.archive.NestedJarArchive;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What it cost an AnnotationFinder to read one archive, or to link the classes
+ * of its archive.  The numbers are only gathered when the finder is given a
+ * ScanListener.
+ * <p/>
+ * Classes rebuilt from a scan cache or a prebuilt index are counted as parsed,
+ * the bytes are then the ones of the recorded class definitions.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ScanStatistics implements ScanStatisticsMBean {
+
+    private final Archive archive;
+    private final AtomicLong entries = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong classes = new AtomicLong();
+    private final AtomicLong parseNanos = new AtomicLong();
+    private final AtomicLong infos = new AtomicLong();
+    private final AtomicLong faultIns = new AtomicLong();
+    private final AtomicLong jvmSkipped = new AtomicLong();
+    private final Map<String, Throwable> failures = Collections.synchronizedMap(new LinkedHashMap<String, Throwable>());
+
+    public ScanStatistics(Archive archive) {
+        this.archive = archive;
+    }
+
+    public Archive getArchive() {
+        return archive;
+    }
+
+    /**
+     * @return the location of the archive if it has one
+     */
+    public String getName() {
+        if (archive instanceof JarArchive) return ((JarArchive) archive).getUrl().toExternalForm();
+        if (archive instanceof MappedJarArchive) return ((MappedJarArchive) archive).getUrl().toExternalForm();
+        if (archive instanceof NestedJarArchive) return ((NestedJarArchive) archive).getUrl().toExternalForm();
+        if (archive instanceof FileArchive) return ((FileArchive) archive).getDir().getAbsolutePath();
+        return archive.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(archive));
+    }
+
+    /**
+     * @return the number of entries the archive listed, including the ones rejected by a filter
+     */
+    public long getEntries() {
+        return entries.get();
+    }
+
+    /**
+     * @return the number of bytes read from the archive
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * @return the number of classes parsed
+     */
+    public long getClasses() {
+        return classes.get();
+    }
+
+    /**
+     * @return the time spent reading and parsing the classes, summed over all threads
+     */
+    public long getParseNanos() {
+        return parseNanos.get();
+    }
+
+    /**
+     * @return the number of class, package, method, field and parameter infos created
+     */
+    public long getInfos() {
+        return infos.get();
+    }
+
+    /**
+     * @return the number of classes read by name because they were missing while linking
+     */
+    public long getFaultIns() {
+        return faultIns.get();
+    }
+
+    /**
+     * @return the number of java.* parents and interfaces which were not read while linking
+     */
+    public long getJvmSkipped() {
+        return jvmSkipped.get();
+    }
+
+    public int getFailureCount() {
+        return failures.size();
+    }
+
+    /**
+     * @return the classes which could not be read, with the reason
+     */
+    public Map<String, Throwable> getFailures() {
+        synchronized (failures) {
+            return new LinkedHashMap<String, Throwable>(failures);
+        }
+    }
+
+    void entry() {
+        entries.incrementAndGet();
+    }
+
+    void parsed(long nanos, long created) {
+        classes.incrementAndGet();
+        parseNanos.addAndGet(nanos);
+        infos.addAndGet(created);
+    }
+
+    void read(long count) {
+        bytes.addAndGet(count);
+    }
+
+    void faultIn() {
+        faultIns.incrementAndGet();
+    }
+
+    void jvmSkipped() {
+        jvmSkipped.incrementAndGet();
+    }
+
+    void failed(String className, Throwable cause) {
+        failures.put(className, cause);
+    }
+
+    InputStream count(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                final int b = super.read();
+                if (b != -1) bytes.incrementAndGet();
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                final int count = super.read(b, off, len);
+                if (count > 0) bytes.addAndGet(count);
+                return count;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return getName() + " entries=" + getEntries() + " bytes=" + getBytes() + " classes=" + getClasses()
+                + " parseNanos=" + getParseNanos() + " infos=" + getInfos() + " faultIns=" + getFaultIns()
+                + " jvmSkipped=" + getJvmSkipped() + " failures=" + getFailureCount();
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.util.ConstantPool;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.ElementType;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads the classes of an archive one at a time and reports the annotations
+ * and super types asked for as they are found, without building or keeping
+ * an index.  Only the bytecode of the class being read is held in memory, so
+ * the memory used does not grow with the size of the archive.
+ * <p/>
+ * The constant pool of each class is searched for the annotations and types
+ * first, classes referring to none of them are not parsed.  Without an index
+ * only the direct super class and interfaces of a class are known, a class
+ * extending a subclass of a type asked for is not reported.
+ *
+ * <pre>
+ * new StreamingScanner(archive).annotatedWith("javax.ejb.Stateless").scan(callback);
+ * </pre>
+ *
+ * @version $Rev$ $Date$
+ */
+public class StreamingScanner {
+
+    private static final int ASM_FLAGS = ClassReader.SKIP_CODE + ClassReader.SKIP_DEBUG + ClassReader.SKIP_FRAMES;
+
+    private final Archive archive;
+    private final Set<String> annotations = new HashSet<String>();
+    private final Set<String> types = new HashSet<String>();
+
+    public StreamingScanner(Archive archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * @param annotations class names of the annotations to report
+     * @return this scanner
+     */
+    public StreamingScanner annotatedWith(String... annotations) {
+        for (String annotation : annotations) {
+            this.annotations.add("L" + annotation.replace('.', '/') + ";");
+        }
+        return this;
+    }
+
+    /**
+     * @param types class names of the classes and interfaces whose direct subtypes are reported
+     * @return this scanner
+     */
+    public StreamingScanner extending(String... types) {
+        for (String type : types) {
+            this.types.add(type.replace('.', '/'));
+        }
+        return this;
+    }
+
+    /**
+     * Reads every class of the archive.  A class which can not be read is reported
+     * to the callback and the scan goes on with the next one.
+     */
+    public void scan(Callback callback) {
+        if (annotations.isEmpty() && types.isEmpty()) return;
+
+        final List<String> values = new ArrayList<String>(annotations);
+        values.addAll(types);
+        final ConstantPool prefilter = new ConstantPool(values);
+
+        final Visitor visitor = new Visitor(callback);
+        for (Archive.Entry entry : archive) {
+            try {
+                final byte[] bytecode = read(entry.getBytecode());
+                if (!prefilter.containsAny(bytecode)) continue;
+
+                final ClassReader reader = new ClassReader(bytecode);
+                if (annotations.isEmpty()) {
+                    visitor.visit(0, reader.getAccess(), reader.getClassName(), null, reader.getSuperName(), reader.getInterfaces());
+                } else {
+                    reader.accept(visitor, ASM_FLAGS);
+                }
+            } catch (IOException e) {
+                callback.failed(entry.getName(), e);
+            } catch (RuntimeException e) {
+                // malformed class file
+                callback.failed(entry.getName(), e);
+            }
+        }
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+            final byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String javaName(String name) {
+        return name.replace('/', '.');
+    }
+
+    /**
+     * Receives what the scanner finds, in the order of the archive.  Names are class names,
+     * nothing passed to the callback is kept by the scanner.
+     */
+    public interface Callback {
+
+        /**
+         * @param className the class, or the package for package annotations
+         * @param annotation the annotation found
+         * @param kind TYPE, ANNOTATION_TYPE, PACKAGE, FIELD, METHOD, CONSTRUCTOR or PARAMETER
+         * @param member null for types and packages, the field name for fields, the method name
+         * and descriptor, as in foo(Ljava/lang/String;)V, for methods, constructors and parameters
+         */
+        void annotated(String className, String annotation, ElementType kind, String member);
+
+        /**
+         * @param className the class
+         * @param type the super class or interface the class directly extends or implements
+         */
+        void extended(String className, String type);
+
+        void failed(String className, Exception cause);
+    }
+
+    private class Visitor extends ClassVisitor {
+        private final Callback callback;
+        private String className;
+        private ElementType kind;
+
+        private Visitor(Callback callback) {
+            super(Opcodes.ASM5);
+            this.callback = callback;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            className = javaName(name);
+            kind = ElementType.TYPE;
+            if (name.endsWith("/package-info")) {
+                className = className.substring(0, className.length() - "package-info".length() - 1);
+                kind = ElementType.PACKAGE;
+            } else if ((access & Opcodes.ACC_ANNOTATION) != 0) {
+                kind = ElementType.ANNOTATION_TYPE;
+            }
+
+            if (types.isEmpty()) return;
+            if (superName != null && types.contains(superName)) {
+                callback.extended(className, javaName(superName));
+            }
+            if (interfaces == null) return;
+            for (String interfce : interfaces) {
+                if (types.contains(interfce)) {
+                    callback.extended(className, javaName(interfce));
+                }
+            }
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            annotated(desc, kind, null);
+            return null;
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, final String name, String desc, String signature, Object value) {
+            return new FieldVisitor(Opcodes.ASM5) {
+                @Override
+                public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                    annotated(desc, ElementType.FIELD, name);
+                    return null;
+                }
+            };
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            final String member = name + desc;
+            final ElementType kind = "<init>".equals(name) ? ElementType.CONSTRUCTOR : ElementType.METHOD;
+            return new MethodVisitor(Opcodes.ASM5) {
+                @Override
+                public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                    annotated(desc, kind, member);
+                    return null;
+                }
+
+                @Override
+                public AnnotationVisitor visitParameterAnnotation(int parameter, String desc, boolean visible) {
+                    annotated(desc, ElementType.PARAMETER, member);
+                    return null;
+                }
+            };
+        }
+
+        private void annotated(String desc, ElementType kind, String member) {
+            if (!annotations.contains(desc)) return;
+            callback.annotated(className, javaName(desc.substring(1, desc.length() - 1)), kind, member);
+        }
+    }
+}
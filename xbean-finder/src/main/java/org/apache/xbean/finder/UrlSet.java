@@ -29,6 +29,8 @@ import java.util.Collections;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.io.IOException;
 import java.io.File;
 
@@ -42,6 +44,11 @@ public class UrlSet implements Iterable<URL> {
 
     private final Map<String,URL> urls;
 
+    /**
+     * The urls by normalized path, sorted so the urls under a path are a range
+     */
+    private SortedMap<String, List<String>> paths;
+
     public UrlSet(ClassLoader classLoader) throws IOException {
         this(ClassLoaders.findUrls(classLoader));
     }
@@ -162,12 +169,12 @@ public class UrlSet implements Iterable<URL> {
 
     public UrlSet excludePaths(String pathString) throws MalformedURLException {
         String[] paths = pathString.split(File.pathSeparator);
-        UrlSet urlSet = this;
+        Map<String, URL> urls = new HashMap<String, URL>(this.urls);
         for (String path : paths) {
             File file = new File(path);
-            urlSet = urlSet.exclude(file);
+            urls.keySet().removeAll(under(file));
         }
-        return urlSet;
+        return new UrlSet(urls);
     }
 
     public UrlSet filter(Filter filter) {
@@ -186,17 +193,54 @@ public class UrlSet implements Iterable<URL> {
     }
 
     public UrlSet relative(File file) throws MalformedURLException {
-        String urlPath = file.toURI().toURL().toExternalForm();
         Map<String, URL> urls = new HashMap<String, URL>();
-        for (Map.Entry<String, URL> entry : this.urls.entrySet()) {
-            String url = entry.getKey();
-            if (url.startsWith(urlPath) || url.startsWith("jar:"+urlPath)){
-                urls.put(url, entry.getValue());
-            }
+        for (String url : under(file)) {
+            urls.put(url, this.urls.get(url));
         }
         return new UrlSet(urls);
     }
 
+    /**
+     * @return the urls, as in the urls map, of the files and jars under this file
+     */
+    private List<String> under(File file) throws MalformedURLException {
+        String urlPath = normalize(file.toURI().toURL().toExternalForm());
+
+        List<String> urls = new ArrayList<String>();
+        for (List<String> list : paths().subMap(urlPath, urlPath + Character.MAX_VALUE).values()) {
+            urls.addAll(list);
+        }
+        return urls;
+    }
+
+    private SortedMap<String, List<String>> paths() {
+        if (paths == null) {
+            SortedMap<String, List<String>> paths = new TreeMap<String, List<String>>();
+            for (String url : urls.keySet()) {
+                String path = normalize(url);
+                List<String> list = paths.get(path);
+                if (list == null) {
+                    list = new ArrayList<String>(1);
+                    paths.put(path, list);
+                }
+                list.add(url);
+            }
+            this.paths = paths;
+        }
+        return paths;
+    }
+
+    /**
+     * Drops the "jar:" protocol and spells file urls the way File.toURI does, so
+     * jar:file:///a/b.jar!/ is under file:/a/
+     */
+    private static String normalize(String url) {
+        if (url.startsWith("jar:")) url = url.substring("jar:".length());
+        if (url.startsWith("file:///")) return "file:/" + url.substring("file:///".length());
+        if (url.startsWith("file://localhost/")) return "file:/" + url.substring("file://localhost/".length());
+        return url;
+    }
+
     public List<URL> getUrls() {
         return new ArrayList<URL>(urls.values());
     }
@@ -25,7 +25,7 @@ import java.util.Arrays;
 import java.util.List;
 
 /**
- * Supports JarArchive and FileArchive URLs
+ * Supports JarArchive, NestedJarArchive and FileArchive URLs
  *
  * @version $Rev$ $Date$
  */
@@ -63,6 +63,10 @@ public class ClasspathArchive extends CompositeArchive {
 
         if (location.getProtocol().equals("jar")) {
 
+            if (NestedJarArchive.isNested(location)) {
+                return new NestedJarArchive(loader, location);
+            }
+
             return new JarArchive(loader, location);
 
         } else if (location.getProtocol().equals("file")) {
@@ -20,16 +20,28 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
+ * The bytecode of a class is read from the archive listing it, looked up in an index of
+ * the class names of the archives built on the first call to getBytecode.  The classes
+ * none of the archives list, or which the archive listing them fails to find, are looked
+ * for in each archive in turn and read from the first one finding them.
+ *
  * @version $Rev$ $Date$
  */
 public class CompositeArchive implements Archive {
 
     private final List<Archive> archives = new ArrayList<Archive>();
+    private volatile ConcurrentMap<String, Archive> index;
+    private final Map<String, List<Archive>> duplicates = new LinkedHashMap<String, List<Archive>>();
 
     public CompositeArchive(Archive... archives) {
         this(Arrays.asList(archives));
@@ -41,10 +53,30 @@ public class CompositeArchive implements Archive {
         }
     }
 
+    public List<Archive> getArchives() {
+        return Collections.unmodifiableList(archives);
+    }
+
     public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+        final String name = name(className);
+        final Map<String, Archive> index = index();
+
+        final Archive owner = index.get(name);
+        if (owner != null) {
+            try {
+                return owner.getBytecode(className);
+            } catch (ClassNotFoundException e) {
+                // listed but not found, the next archive may have it as the class loaders would
+            }
+        }
+
+        // not listed, the archive may still find it, a FileArchive through its class loader for instance
         for (Archive archive : archives) {
+            if (archive == owner) continue;
             try {
-                return archive.getBytecode(className);
+                final InputStream bytecode = archive.getBytecode(className);
+                index.put(name, archive);
+                return bytecode;
             } catch (ClassNotFoundException e) {
             }
         }
@@ -52,6 +84,63 @@ public class CompositeArchive implements Archive {
         throw new ClassNotFoundException(className);
     }
 
+    /**
+     * The classes listed by more than one of the archives, the bytecode is read from the
+     * first of them as the class loaders would.
+     *
+     * @return the archives listing each duplicated class name, in the order of the archives
+     */
+    public Map<String, List<Archive>> getDuplicates() {
+        index();
+        synchronized (duplicates) {
+            return Collections.unmodifiableMap(new LinkedHashMap<String, List<Archive>>(duplicates));
+        }
+    }
+
+    private Map<String, Archive> index() {
+        ConcurrentMap<String, Archive> index = this.index;
+        if (index != null) return index;
+
+        synchronized (duplicates) {
+            if (this.index != null) return this.index;
+
+            index = new ConcurrentHashMap<String, Archive>();
+            for (Archive archive : archives) {
+                for (Entry entry : archive) {
+                    final String name = entry.getName();
+                    final Archive owner = index.putIfAbsent(name, archive);
+                    if (owner == null || owner == archive) continue;
+
+                    List<Archive> owners = duplicates.get(name);
+                    if (owners == null) {
+                        owners = new ArrayList<Archive>();
+                        owners.add(owner);
+                        duplicates.put(name, owners);
+                    }
+                    if (!owners.contains(archive)) owners.add(archive);
+                }
+            }
+
+            this.index = index;
+            return index;
+        }
+    }
+
+    private static String name(String className) {
+        int pos = className.indexOf("<");
+        if (pos > -1) {
+            className = className.substring(0, pos);
+        }
+        pos = className.indexOf(">");
+        if (pos > -1) {
+            className = className.substring(0, pos);
+        }
+        if (className.endsWith(".class")) {
+            className = className.substring(0, className.length() - 6).replace('/', '.');
+        }
+        return className;
+    }
+
     public Class<?> loadClass(String className) throws ClassNotFoundException {
         for (Archive archive : archives) {
             try {
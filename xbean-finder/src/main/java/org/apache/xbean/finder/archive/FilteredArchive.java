@@ -16,7 +16,10 @@
  */
 package org.apache.xbean.finder.archive;
 
+import org.apache.xbean.finder.filter.CompiledFilter;
 import org.apache.xbean.finder.filter.Filter;
+import org.apache.xbean.finder.filter.FilterList;
+import org.apache.xbean.finder.filter.PackageFilter;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -32,9 +35,24 @@ public class FilteredArchive implements Archive {
 
     private final Filter filter;
 
+    /**
+     * The decision of a filter made of package filters only is the same for all the
+     * classes of a package
+     */
+    private final boolean byPackage;
+
     public FilteredArchive(Archive archive, Filter filter) {
         this.archive = archive;
         this.filter = filter;
+        this.byPackage = byPackage(filter);
+    }
+
+    public Archive getArchive() {
+        return archive;
+    }
+
+    public Filter getFilter() {
+        return filter;
     }
 
     public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
@@ -49,11 +67,26 @@ public class FilteredArchive implements Archive {
         return new FilteredIterator(archive.iterator());
     }
 
+    private static boolean byPackage(Filter filter) {
+        if (filter instanceof PackageFilter) return true;
+        if (filter instanceof CompiledFilter) return ((CompiledFilter) filter).isPackageFilter();
+        if (!(filter instanceof FilterList)) return false;
+
+        for (Filter f : ((FilterList) filter).getFilters()) {
+            if (!byPackage(f)) return false;
+        }
+        return true;
+    }
+
     private final class FilteredIterator implements Iterator<Entry> {
         private final Iterator<Entry> it;
 
         private Entry next;
 
+        // the entries of a package are listed together, the last decision is reused for them
+        private String lastPackage;
+        private boolean lastAccepted;
+
         private FilteredIterator(Iterator<Entry> it) {
             this.it = it;
         }
@@ -83,11 +116,24 @@ public class FilteredArchive implements Archive {
 
                 next = it.next();
 
-                if (filter.accept(next.getName())) return;
+                if (accept(next.getName())) return;
 
                 next = null;
             }
         }
 
+        private boolean accept(String name) {
+            if (!byPackage) return filter.accept(name);
+
+            final int dot = name.lastIndexOf('.');
+            if (lastPackage != null && dot == lastPackage.length() && name.startsWith(lastPackage)) {
+                return lastAccepted;
+            }
+
+            lastPackage = name.substring(0, Math.max(dot, 0));
+            lastAccepted = filter.accept(name);
+            return lastAccepted;
+        }
+
     }
 }
\ No newline at end of file
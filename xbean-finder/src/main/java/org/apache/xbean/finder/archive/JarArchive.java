@@ -16,6 +16,7 @@
  */
 package org.apache.xbean.finder.archive;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -60,6 +61,10 @@ public class JarArchive implements Archive {
         return url;
     }
 
+    public File getFile() {
+        return new File(jar.getName());
+    }
+
     public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
         int pos = className.indexOf("<");
         if (pos > -1) {
@@ -80,6 +85,26 @@ public class JarArchive implements Archive {
     }
 
 
+    /**
+     * @return the content of the named entry of the jar or null if there is no such entry
+     */
+    public InputStream getResource(String name) throws IOException {
+        final ZipEntry entry = jar.getEntry(name);
+        if (entry == null) return null;
+
+        return jar.getInputStream(entry);
+    }
+
+    /**
+     * @return the CRC-32 of the named entry of the jar, as recorded in the jar, or -1 if there is no such entry
+     */
+    public long getCrc(String name) {
+        final ZipEntry entry = jar.getEntry(name);
+        if (entry == null) return -1;
+
+        return entry.getCrc();
+    }
+
     public Class<?> loadClass(String className) throws ClassNotFoundException {
         return loader.loadClass(className);
     }
@@ -107,6 +132,9 @@ public class JarArchive implements Archive {
                 if (entry.isDirectory() || !entryName.endsWith(".class")) {
                     continue;
                 }
+                if (entryName.startsWith("META-INF/")) {
+                    continue; // versioned copies of multi-release jars, see MultiReleaseJarArchive
+                }
 
                 String className = entryName;
                 if (entryName.endsWith(".class")) {
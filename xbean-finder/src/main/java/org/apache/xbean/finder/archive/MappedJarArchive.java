@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Iterator;
+
+/**
+ * A jar archive read from a memory mapped file instead of a JarFile.
+ * <p/>
+ * The central directory is parsed once when the archive is created.  Stored entries
+ * are read straight from the mapped file and deflated ones are inflated in a single
+ * pass, see ZipDirectory.  Jars larger than 2GB and Zip64 jars are not supported.
+ * <p/>
+ * The file stays mapped until the archive is closed, or else until the archive
+ * is garbage collected.
+ *
+ * @version $Rev$ $Date$
+ */
+public class MappedJarArchive implements Archive, Closeable {
+
+    private final ClassLoader loader;
+    private final URL url;
+    private final File file;
+    private final ZipDirectory directory;
+
+    public MappedJarArchive(ClassLoader loader, URL url) {
+        try {
+            this.loader = loader;
+            this.url = url;
+            URL u = url;
+
+            String jarPath = url.getFile();
+            if (jarPath.contains("!")) {
+                jarPath = jarPath.substring(0, jarPath.indexOf("!"));
+                u = new URL(jarPath);
+            }
+            this.file = new File(FileArchive.decode(u.getFile()));
+            this.directory = ZipDirectory.open(file);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+        int pos = className.indexOf("<");
+        if (pos > -1) {
+            className = className.substring(0, pos);
+        }
+        pos = className.indexOf(">");
+        if (pos > -1) {
+            className = className.substring(0, pos);
+        }
+        if (!className.endsWith(".class")) {
+            className = className.replace('.', '/') + ".class";
+        }
+
+        final int entry = directory.indexOf(className);
+        if (entry == -1) throw new ClassNotFoundException(className);
+
+        return directory.getInputStream(entry);
+    }
+
+    /**
+     * @return the content of the named entry of the jar or null if there is no such entry
+     */
+    public InputStream getResource(String name) throws IOException {
+        final int entry = directory.indexOf(name);
+        if (entry == -1) return null;
+
+        return directory.getInputStream(entry);
+    }
+
+    /**
+     * @return the CRC-32 of the named entry of the jar, as recorded in the jar, or -1 if there is no such entry
+     */
+    public long getCrc(String name) {
+        final int entry = directory.indexOf(name);
+        if (entry == -1) return -1;
+
+        return directory.getCrc(entry);
+    }
+
+    public Class<?> loadClass(String className) throws ClassNotFoundException {
+        return loader.loadClass(className);
+    }
+
+    public Iterator<Entry> iterator() {
+        return directory.classes();
+    }
+
+    /**
+     * Unmaps the jar, nothing can be read from the archive afterwards.
+     */
+    public void close() {
+        directory.close();
+    }
+}
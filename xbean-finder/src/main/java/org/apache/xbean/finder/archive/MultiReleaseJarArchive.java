@@ -0,0 +1,236 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.apache.xbean.finder.util.ClassFileVersions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * A jar archive aware of the META-INF/versions/N entries of multi-release jars.
+ * <p/>
+ * The entry of each class is chosen once, when the archive is opened: the highest version
+ * not greater than the release, falling back on the base entry.  Each class is then
+ * listed and parsed a single time, with the bytecode the runtime would load.  Jars without
+ * the Multi-Release manifest attribute are read like a JarArchive.
+ * <p/>
+ * By default the release is the one of the running Java platform, capped to the highest
+ * release the ASM in use reads the class files of: with ASM 5 the versioned entries are
+ * ignored, their Java 9+ class files cannot be parsed.
+ *
+ * @version $Rev$ $Date$
+ */
+public class MultiReleaseJarArchive implements Archive {
+
+    private static final String VERSIONS = "META-INF/versions/";
+
+    private final ClassLoader loader;
+    private final URL url;
+    private final JarFile jar;
+    private final int release;
+    private final boolean multiRelease;
+    private final Map<String, JarEntry> classes;
+
+    public MultiReleaseJarArchive(ClassLoader loader, URL url) {
+        this(loader, url, Math.min(runtimeRelease(), ClassFileVersions.maxRelease()));
+    }
+
+    public MultiReleaseJarArchive(ClassLoader loader, URL url, int release) {
+        try {
+            this.loader = loader;
+            this.url = url;
+            this.release = release;
+            URL u = url;
+
+            String jarPath = url.getFile();
+            if (jarPath.contains("!")) {
+                jarPath = jarPath.substring(0, jarPath.indexOf("!"));
+                u = new URL(jarPath);
+            }
+            jar = new JarFile(FileArchive.decode(u.getFile())); // no more an url
+
+            final Manifest manifest = jar.getManifest();
+            multiRelease = manifest != null && "true".equalsIgnoreCase(manifest.getMainAttributes().getValue(new Attributes.Name("Multi-Release")));
+            classes = select();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the major version of the running Java platform, 8 for "1.8" and 17 for "17"
+     */
+    public static int runtimeRelease() {
+        final String version = System.getProperty("java.specification.version", "1.5");
+        try {
+            if (version.startsWith("1.")) return Integer.parseInt(version.substring(2));
+            final int dot = version.indexOf('.');
+            return Integer.parseInt(dot < 0 ? version : version.substring(0, dot));
+        } catch (NumberFormatException e) {
+            return 5;
+        }
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    public File getFile() {
+        return new File(jar.getName());
+    }
+
+    public boolean isMultiRelease() {
+        return multiRelease;
+    }
+
+    public int getRelease() {
+        return release;
+    }
+
+    /**
+     * @return the entry chosen for each class, the classes in the order of their base
+     * entries in the jar followed by the ones only found in versioned entries, so the
+     * archive lists the classes in the order a JarArchive does
+     */
+    private Map<String, JarEntry> select() {
+        final Map<String, JarEntry> base = new LinkedHashMap<String, JarEntry>();
+        final Map<String, JarEntry> versioned = new LinkedHashMap<String, JarEntry>();
+        final Map<String, Integer> versions = new HashMap<String, Integer>();
+
+        final Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            final JarEntry entry = entries.nextElement();
+            String name = entry.getName();
+            if (entry.isDirectory() || !name.endsWith(".class")) continue;
+
+            int version = 0;
+            if (name.startsWith(VERSIONS)) {
+                if (!multiRelease) continue;
+
+                final int slash = name.indexOf('/', VERSIONS.length());
+                if (slash < 0) continue;
+                try {
+                    version = Integer.parseInt(name.substring(VERSIONS.length(), slash));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (version > release) continue;
+                name = name.substring(slash + 1);
+            } else if (name.startsWith("META-INF/")) {
+                continue;
+            }
+
+            final String className = name.substring(0, name.length() - 6);
+            if (className.contains(".")) continue;
+
+            if (version == 0) {
+                if (!base.containsKey(className)) base.put(className, entry);
+                continue;
+            }
+
+            final Integer current = versions.get(className);
+            if (current == null || current < version) {
+                versions.put(className, version);
+                versioned.put(className, entry);
+            }
+        }
+
+        final Map<String, JarEntry> selected = new LinkedHashMap<String, JarEntry>();
+        for (Map.Entry<String, JarEntry> entry : base.entrySet()) {
+            final JarEntry version = versioned.remove(entry.getKey());
+            selected.put(entry.getKey(), version != null ? version : entry.getValue());
+        }
+        selected.putAll(versioned);
+        return selected;
+    }
+
+    public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+        int pos = className.indexOf("<");
+        if (pos > -1) {
+            className = className.substring(0, pos);
+        }
+        pos = className.indexOf(">");
+        if (pos > -1) {
+            className = className.substring(0, pos);
+        }
+        if (className.endsWith(".class")) {
+            className = className.substring(0, className.length() - 6);
+        } else {
+            className = className.replace('.', '/');
+        }
+
+        final JarEntry entry = classes.get(className);
+        if (entry == null) throw new ClassNotFoundException(className);
+
+        return jar.getInputStream(entry);
+    }
+
+    public Class<?> loadClass(String className) throws ClassNotFoundException {
+        return loader.loadClass(className);
+    }
+
+    public Iterator<Entry> iterator() {
+        final Iterator<Map.Entry<String, JarEntry>> iterator = new ArrayList<Map.Entry<String, JarEntry>>(classes.entrySet()).iterator();
+        return new Iterator<Entry>() {
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            public Entry next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                final Map.Entry<String, JarEntry> next = iterator.next();
+                return new ClassEntry(next.getValue(), next.getKey().replace('/', '.'));
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("remove");
+            }
+        };
+    }
+
+    private class ClassEntry implements Entry {
+        private final String name;
+        private final JarEntry entry;
+
+        private ClassEntry(JarEntry entry, String name) {
+            this.name = name;
+            this.entry = entry;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public InputStream getBytecode() throws IOException {
+            return jar.getInputStream(entry);
+        }
+    }
+}
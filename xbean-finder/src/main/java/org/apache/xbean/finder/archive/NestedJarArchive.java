@@ -0,0 +1,207 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A jar nested in another jar, like the libraries under WEB-INF/lib of a war
+ * or BOOT-INF/lib of a fat jar, read in place without extracting it.
+ * <p/>
+ * The outer jar is memory mapped.  A stored inner jar is read straight from
+ * its offsets in the outer file, a deflated one is inflated once into a temporary
+ * file, memory mapped in turn.  The classes of the inner jar are then looked up in
+ * its own central directory.
+ * <p/>
+ * Closing the archive unmaps the jars and deletes the temporary file, the outer
+ * jar shared by the archives of {@link #archives} is left to the garbage collector.
+ * <p/>
+ * The urls of nested jars have the form jar:file:/app.war!/WEB-INF/lib/lib.jar!/
+ *
+ * @version $Rev$ $Date$
+ */
+public class NestedJarArchive implements Archive, Closeable {
+
+    private final ClassLoader loader;
+    private final URL url;
+    private final File file;
+    private final String path;
+    private final ZipDirectory directory;
+    private final ZipDirectory outer;
+
+    public NestedJarArchive(ClassLoader loader, URL url) {
+        if (!isNested(url)) throw new IllegalArgumentException("not a nested jar url: " + url);
+
+        final String spec = url.getFile();
+        final int separator = spec.indexOf("!/");
+        final int end = spec.indexOf("!", separator + 2);
+        final String path = spec.substring(separator + 2, (end == -1) ? spec.length() : end);
+
+        try {
+            final File file = new File(FileArchive.decode(new URL(spec.substring(0, separator)).getFile()));
+
+            this.loader = loader;
+            this.url = url;
+            this.file = file;
+            this.path = path;
+            this.outer = ZipDirectory.open(file);
+            this.directory = open(outer, path);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public NestedJarArchive(ClassLoader loader, File file, String path) {
+        this(loader, file, path, outer(file), true);
+    }
+
+    private NestedJarArchive(ClassLoader loader, File file, String path, ZipDirectory outer, boolean owned) {
+        try {
+            this.loader = loader;
+            this.url = new URL("jar:" + file.toURI().toURL() + "!/" + path + "!/");
+            this.file = file;
+            this.path = path;
+            this.outer = owned ? outer : null;
+            this.directory = open(outer, path);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates an archive for each jar found in a directory of the jar file, the
+     * central directory of the outer jar is read only once for all of them.
+     *
+     * @param directory the directory of the jars in the outer jar, for instance WEB-INF/lib/
+     */
+    public static List<Archive> archives(ClassLoader loader, File file, String directory) {
+        if (!directory.endsWith("/")) directory += "/";
+
+        final ZipDirectory outer = outer(file);
+
+        final List<Archive> archives = new ArrayList<Archive>();
+        for (int entry = 0; entry < outer.size(); entry++) {
+            final String name = outer.getName(entry);
+            if (!name.startsWith(directory) || !name.endsWith(".jar")) continue;
+            if (name.indexOf('/', directory.length()) != -1) continue;
+
+            archives.add(new NestedJarArchive(loader, file, name, outer, false));
+        }
+        return archives;
+    }
+
+    public static boolean isNested(URL url) {
+        if (!"jar".equals(url.getProtocol())) return false;
+
+        final String spec = url.getFile();
+        final int separator = spec.indexOf("!/");
+        if (separator == -1) return false;
+
+        final int end = spec.indexOf("!", separator + 2);
+        final String path = spec.substring(separator + 2, (end == -1) ? spec.length() : end);
+        return path.endsWith(".jar");
+    }
+
+    private static ZipDirectory outer(File file) {
+        try {
+            return ZipDirectory.open(file);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ZipDirectory open(ZipDirectory outer, String path) throws IOException {
+        final int entry = outer.indexOf(path);
+        if (entry == -1) throw new IOException("No such jar: " + path);
+
+        if (outer.getMethod(entry) == ZipDirectory.STORED) {
+            return new ZipDirectory(outer.getData(entry));
+        }
+
+        return outer.extract(entry);
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the outer jar
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the name of the jar in the outer jar
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+        int pos = className.indexOf("<");
+        if (pos > -1) {
+            className = className.substring(0, pos);
+        }
+        pos = className.indexOf(">");
+        if (pos > -1) {
+            className = className.substring(0, pos);
+        }
+        if (!className.endsWith(".class")) {
+            className = className.replace('.', '/') + ".class";
+        }
+
+        final int entry = directory.indexOf(className);
+        if (entry == -1) throw new ClassNotFoundException(className);
+
+        return directory.getInputStream(entry);
+    }
+
+    /**
+     * @return the content of the named entry of the nested jar or null if there is no such entry
+     */
+    public InputStream getResource(String name) throws IOException {
+        final int entry = directory.indexOf(name);
+        if (entry == -1) return null;
+
+        return directory.getInputStream(entry);
+    }
+
+    public Class<?> loadClass(String className) throws ClassNotFoundException {
+        return loader.loadClass(className);
+    }
+
+    public Iterator<Entry> iterator() {
+        return directory.classes();
+    }
+
+    /**
+     * Unmaps the jars, nothing can be read from the archive afterwards.
+     */
+    public void close() {
+        directory.close();
+        if (outer != null) outer.close();
+    }
+}
@@ -0,0 +1,520 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The central directory of a zip file held in a ByteBuffer, usually a memory
+ * mapped file.
+ * <p/>
+ * Stored entries are read straight from the buffer.  Deflated entries are inflated
+ * in one go into an array of their uncompressed size, with Inflaters pooled by the
+ * directory instead of being created for every entry.
+ * <p/>
+ * Closing the directory ends the pooled Inflaters and, when the directory was
+ * opened on a file, unmaps it and deletes it if it was extracted from another zip.  Nothing may be read from the directory, or from
+ * the streams it returned, once it is closed.
+ * <p/>
+ * Zip64 archives and encrypted entries are not supported.
+ *
+ * @version $Rev$ $Date$
+ */
+final class ZipDirectory implements Closeable {
+
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_SIZE = 22;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_SIZE = 46;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_SIZE = 30;
+
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+
+    private final ByteBuffer mapped;
+    private final File extracted;
+    private final ByteBuffer zip;
+    private final String[] names;
+    private final int[] methods;
+    private final int[] crcs;
+    private final int[] compressedSizes;
+    private final int[] sizes;
+    private final int[] offsets;
+    private final Map<String, Integer> index;
+    private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<Inflater>();
+    private volatile boolean closed;
+
+    ZipDirectory(ByteBuffer buffer) throws IOException {
+        this(buffer, null, null);
+    }
+
+    private ZipDirectory(ByteBuffer buffer, ByteBuffer mapped, File extracted) throws IOException {
+        this.mapped = mapped;
+        this.extracted = extracted;
+        this.zip = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        final int end = findEnd();
+        final int count = u2(end + 10);
+        int position = (int) u4(end + 16);
+
+        names = new String[count];
+        methods = new int[count];
+        crcs = new int[count];
+        compressedSizes = new int[count];
+        sizes = new int[count];
+        offsets = new int[count];
+        index = new HashMap<String, Integer>(count * 4 / 3 + 1);
+
+        for (int i = 0; i < count; i++) {
+            if (position + CENTRAL_SIZE > zip.limit() || zip.getInt(position) != CENTRAL_SIGNATURE) {
+                throw new IOException("Invalid central directory entry " + i);
+            }
+            if ((u2(position + 8) & 1) != 0) throw new IOException("Encrypted entries are not supported");
+
+            methods[i] = u2(position + 10);
+            crcs[i] = zip.getInt(position + 16);
+            compressedSizes[i] = (int) u4(position + 20);
+            sizes[i] = (int) u4(position + 24);
+            offsets[i] = (int) u4(position + 42);
+
+            final int nameLength = u2(position + 28);
+            final int extraLength = u2(position + 30);
+            final int commentLength = u2(position + 32);
+
+            names[i] = string(position + CENTRAL_SIZE, nameLength);
+            index.put(names[i], i);
+
+            position += CENTRAL_SIZE + nameLength + extraLength + commentLength;
+        }
+    }
+
+    /**
+     * @return the directory of the memory mapped file, which is unmapped when the directory is closed
+     */
+    static ZipDirectory open(File file) throws IOException {
+        return open(file, null);
+    }
+
+    private static ZipDirectory open(File file, File extracted) throws IOException {
+        final ByteBuffer mapped = map(file);
+        try {
+            return new ZipDirectory(mapped, mapped, extracted);
+        } catch (IOException e) {
+            unmap(mapped);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the directory of the entry, a zip itself, inflated to a temporary file which is
+     * memory mapped in turn and deleted when the directory is closed, or right away where the
+     * platform allows to delete a mapped file
+     */
+    public ZipDirectory extract(int entry) throws IOException {
+        final File file = File.createTempFile("xbean-finder-", ".jar");
+        try {
+            final OutputStream out = new FileOutputStream(file);
+            try {
+                writeTo(entry, out);
+            } finally {
+                out.close();
+            }
+
+            final ZipDirectory directory = open(file, file);
+            if (!file.delete()) file.deleteOnExit();
+            return directory;
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            // the mapping stays valid once the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Releases the mapping right away instead of when the buffer is collected,
+     * which on Windows also keeps the file from being deleted.  There is no
+     * public api for it, when none of the known ways works the mapping is left
+     * to the garbage collector.
+     */
+    private static void unmap(ByteBuffer buffer) {
+        try {
+            try {
+                // java 9 and later
+                final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } catch (NoSuchMethodException e) {
+                // java 8 and before
+                final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception e) {
+            // left to the garbage collector
+        } catch (LinkageError e) {
+            // left to the garbage collector
+        }
+    }
+
+    /**
+     * Ends the pooled Inflaters and unmaps the file the directory was opened on.
+     */
+    public void close() {
+        if (closed) return;
+        closed = true;
+
+        Inflater inflater;
+        while ((inflater = inflaters.poll()) != null) {
+            inflater.end();
+        }
+        if (mapped != null) unmap(mapped);
+        if (extracted != null) extracted.delete();
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int entry) {
+        return names[entry];
+    }
+
+    public int getMethod(int entry) {
+        return methods[entry];
+    }
+
+    public int getSize(int entry) {
+        return sizes[entry];
+    }
+
+    /**
+     * @return the CRC-32 of the uncompressed data of the entry, as recorded in the central directory
+     */
+    public long getCrc(int entry) {
+        return crcs[entry] & 0xFFFFFFFFL;
+    }
+
+    public boolean isDirectory(int entry) {
+        return names[entry].endsWith("/");
+    }
+
+    /**
+     * @return the position of the named entry or -1 if there is no such entry
+     */
+    public int indexOf(String name) {
+        final Integer entry = index.get(name);
+        return (entry == null) ? -1 : entry;
+    }
+
+    /**
+     * @return the raw, possibly compressed, data of the entry, shared with the zip
+     */
+    public ByteBuffer getData(int entry) throws IOException {
+        if (closed) throw new IOException("Closed");
+
+        final int local = offsets[entry];
+        if (local + LOCAL_SIZE > zip.limit() || zip.getInt(local) != LOCAL_SIGNATURE) {
+            throw new IOException("Invalid local header for " + names[entry]);
+        }
+
+        final int start = local + LOCAL_SIZE + u2(local + 26) + u2(local + 28);
+        final int length = (methods[entry] == STORED) ? sizes[entry] : compressedSizes[entry];
+        if (start + length > zip.limit()) throw new IOException("Truncated entry " + names[entry]);
+
+        final ByteBuffer data = zip.duplicate();
+        data.limit(start + length);
+        data.position(start);
+        return data.slice();
+    }
+
+    public InputStream getInputStream(int entry) throws IOException {
+        final ByteBuffer data = getData(entry);
+
+        switch (methods[entry]) {
+            case STORED:
+                return new ByteBufferInputStream(data);
+            case DEFLATED:
+                return new ByteBufferInputStream(ByteBuffer.wrap(inflate(data, sizes[entry], names[entry])));
+            default:
+                throw new IOException("Unsupported compression method " + methods[entry] + " for " + names[entry]);
+        }
+    }
+
+    /**
+     * Copies the uncompressed data of the entry a buffer at a time, for entries which
+     * are too large to be inflated in one go.
+     */
+    public void writeTo(int entry, OutputStream out) throws IOException {
+        final ByteBuffer data = getData(entry);
+        final byte[] input = new byte[8192];
+
+        if (methods[entry] == STORED) {
+            while (data.hasRemaining()) {
+                final int length = Math.min(input.length, data.remaining());
+                data.get(input, 0, length);
+                out.write(input, 0, length);
+            }
+            return;
+        }
+        if (methods[entry] != DEFLATED) {
+            throw new IOException("Unsupported compression method " + methods[entry] + " for " + names[entry]);
+        }
+
+        final byte[] output = new byte[8192];
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) inflater = new Inflater(true);
+        try {
+            long count = 0;
+            boolean padded = false;
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (data.hasRemaining()) {
+                        final int length = Math.min(input.length, data.remaining());
+                        data.get(input, 0, length);
+                        inflater.setInput(input, 0, length);
+                    } else if (!padded) {
+                        // the "nowrap" inflater wants one extra byte past the deflated data
+                        inflater.setInput(new byte[1]);
+                        padded = true;
+                    } else {
+                        break;
+                    }
+                }
+                final int inflated = inflater.inflate(output);
+                if (inflated == 0 && inflater.needsDictionary()) break;
+                out.write(output, 0, inflated);
+                count += inflated;
+            }
+            if (count != (sizes[entry] & 0xFFFFFFFFL)) throw new IOException("Truncated entry " + names[entry]);
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid deflated data for " + names[entry] + ": " + e.getMessage());
+        } finally {
+            release(inflater);
+        }
+    }
+
+    /**
+     * @return the class entries of the zip, in the order of the central directory
+     */
+    public Iterator<Archive.Entry> classes() {
+        return new ClassIterator();
+    }
+
+    private int findEnd() throws IOException {
+        // the end record is followed by a comment of at most 64k
+        final int last = zip.limit() - END_SIZE;
+        final int first = Math.max(0, last - 0xFFFF);
+        for (int position = last; position >= first; position--) {
+            if (zip.getInt(position) == END_SIGNATURE) {
+                if (u2(position + 10) == 0xFFFF || u4(position + 16) == 0xFFFFFFFFL) {
+                    throw new IOException("Zip64 archives are not supported");
+                }
+                return position;
+            }
+        }
+        throw new IOException("Not a zip file, no end of central directory");
+    }
+
+    private int u2(int position) {
+        return zip.getShort(position) & 0xFFFF;
+    }
+
+    private long u4(int position) {
+        return zip.getInt(position) & 0xFFFFFFFFL;
+    }
+
+    private String string(int position, int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = zip.get(position + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private class ClassIterator implements Iterator<Archive.Entry> {
+
+        private int position;
+        private Archive.Entry next;
+
+        private boolean advance() {
+            if (next != null) {
+                return true;
+            }
+            while (position < names.length) {
+                final int entry = position++;
+                final String entryName = names[entry];
+                if (isDirectory(entry) || !entryName.endsWith(".class")) {
+                    continue;
+                }
+                if (entryName.startsWith("META-INF/")) {
+                    continue; // versioned copies of multi-release jars, see MultiReleaseJarArchive
+                }
+
+                final String className = entryName.substring(0, entryName.length() - 6);
+                if (className.contains(".")) {
+                    continue;
+                }
+
+                next = new ClassEntry(entry, className.replace('/', '.'));
+                return true;
+            }
+            return false;
+        }
+
+        public boolean hasNext() {
+            return advance();
+        }
+
+        public Archive.Entry next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Archive.Entry entry = next;
+            next = null;
+            return entry;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+
+    private class ClassEntry implements Archive.Entry {
+        private final String name;
+        private final int entry;
+
+        private ClassEntry(int entry, String name) {
+            this.name = name;
+            this.entry = entry;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public InputStream getBytecode() throws IOException {
+            return getInputStream(entry);
+        }
+    }
+
+    private byte[] inflate(ByteBuffer data, int size, String name) throws IOException {
+        final int length = data.remaining();
+        // the "nowrap" inflater wants one extra byte past the deflated data
+        final byte[] input = new byte[length + 1];
+        data.get(input, 0, length);
+
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) inflater = new Inflater(true);
+        try {
+            final byte[] output = new byte[size];
+            inflater.setInput(input);
+            int count = 0;
+            while (count < size) {
+                final int inflated = inflater.inflate(output, count, size - count);
+                if (inflated == 0) break;
+                count += inflated;
+            }
+            if (count != size) throw new IOException("Truncated entry " + name);
+            return output;
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid deflated data for " + name + ": " + e.getMessage());
+        } finally {
+            release(inflater);
+        }
+    }
+
+    private void release(Inflater inflater) {
+        inflater.reset();
+        inflaters.offer(inflater);
+
+        // closed meanwhile, the pool is not drained again
+        if (closed && inflaters.remove(inflater)) inflater.end();
+    }
+
+    private class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (closed) throw new IOException("Closed");
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (closed) throw new IOException("Closed");
+            if (length == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+
+            final int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            final int count = (int) Math.min(Math.max(n, 0), buffer.remaining());
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,380 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A filter tree compiled into a few automatons walked once per name.
+ * <p/>
+ * The package, prefix and class filters are the paths of a prefix trie, the suffix
+ * filters the paths of a trie of the reversed suffixes and the contains filters an
+ * Aho-Corasick automaton, so a name is matched against all of them in time linear
+ * to its length whatever the number of filters.  Pattern filters which are literals,
+ * optionally starting or ending with ".*", are compiled as class, prefix, suffix or
+ * contains filters, the other patterns and the unknown filters are evaluated one by
+ * one after the automatons.
+ * <p/>
+ * Every pattern is marked as coming from the include or from the exclude side of an
+ * IncludeExcludeFilter or ExcludeIncludeFilter, so both sides are evaluated in the
+ * same walk.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class CompiledFilter implements Filter {
+
+    private static final int INCLUDE = 1;
+    private static final int EXCLUDE = 2;
+
+    enum Mode {
+        ANY, INCLUDE_EXCLUDE, EXCLUDE_INCLUDE
+    }
+
+    private final Filter original;
+    private final Mode mode;
+    private final int all;
+    private final Node prefixes;
+    private final Node suffixes;
+    private final Node tokens;
+    private final Filter[] others;
+    private final int[] otherMasks;
+    private final boolean translated;
+    private final boolean packages;
+
+    private CompiledFilter(Filter original, Mode mode, Builder builder) {
+        this.original = original;
+        this.mode = mode;
+        this.all = builder.all;
+        this.prefixes = builder.prefixes.isEmpty() ? null : builder.prefixes;
+        this.suffixes = builder.suffixes.isEmpty() ? null : builder.suffixes;
+        this.tokens = builder.tokens.isEmpty() ? null : link(builder.tokens);
+        this.others = builder.others.toArray(new Filter[builder.others.size()]);
+        this.otherMasks = new int[others.length];
+        for (int i = 0; i < otherMasks.length; i++) {
+            otherMasks[i] = builder.otherMasks.get(i);
+        }
+        this.translated = builder.translated;
+        this.packages = builder.packages;
+    }
+
+    /**
+     * @return the compiled filter, or null if the tree has nothing which can be compiled
+     */
+    static CompiledFilter compile(Filter filter) {
+        final Builder builder = new Builder();
+        final Mode mode;
+        if (filter instanceof IncludeExcludeFilter) {
+            final IncludeExcludeFilter includeExclude = (IncludeExcludeFilter) filter;
+            builder.add(includeExclude.getInclude(), INCLUDE);
+            builder.add(includeExclude.getExclude(), EXCLUDE);
+            mode = Mode.INCLUDE_EXCLUDE;
+        } else if (filter instanceof ExcludeIncludeFilter) {
+            final ExcludeIncludeFilter excludeInclude = (ExcludeIncludeFilter) filter;
+            builder.add(excludeInclude.getInclude(), INCLUDE);
+            builder.add(excludeInclude.getExclude(), EXCLUDE);
+            mode = Mode.EXCLUDE_INCLUDE;
+        } else {
+            builder.add(filter, INCLUDE);
+            mode = Mode.ANY;
+        }
+
+        if (builder.compiled == 0) return null;
+        return new CompiledFilter(filter, mode, builder);
+    }
+
+    /**
+     * @return true if the filter is made of package filters only, its decision is then
+     * the same for all the classes of a package
+     */
+    public boolean isPackageFilter() {
+        return packages;
+    }
+
+    public boolean accept(String name) {
+        if (translated && hasLineTerminator(name)) {
+            // ".*" does not match line terminators, let the patterns decide
+            return original.accept(name);
+        }
+
+        final int found = match(name);
+        switch (mode) {
+            case INCLUDE_EXCLUDE:
+                return found == INCLUDE;
+            case EXCLUDE_INCLUDE:
+                return (found & EXCLUDE) == 0 || (found & INCLUDE) != 0;
+            default:
+                return found != 0;
+        }
+    }
+
+    private int match(String name) {
+        int found = 0;
+        final int length = name.length();
+
+        if (prefixes != null) {
+            Node node = prefixes;
+            found |= node.prefix;
+            for (int i = 0; i < length && node != null; i++) {
+                if (found == all) return found;
+                node = node.child(name.charAt(i));
+                if (node != null) found |= node.prefix;
+            }
+            // the whole name is a path of the trie
+            if (node != null) found |= node.exact;
+            if (found == all) return found;
+        }
+
+        if (suffixes != null) {
+            Node node = suffixes;
+            found |= node.prefix;
+            for (int i = length - 1; i >= 0 && node != null && found != all; i--) {
+                node = node.child(name.charAt(i));
+                if (node != null) found |= node.prefix;
+            }
+            if (found == all) return found;
+        }
+
+        if (tokens != null) {
+            Node state = tokens;
+            found |= state.prefix;
+            for (int i = 0; i < length && found != all; i++) {
+                final char c = name.charAt(i);
+                Node next = state.child(c);
+                while (next == null && state != tokens) {
+                    state = state.fail;
+                    next = state.child(c);
+                }
+                state = (next == null) ? tokens : next;
+                found |= state.prefix;
+            }
+            if (found == all) return found;
+        }
+
+        for (int i = 0; i < others.length; i++) {
+            final int mask = otherMasks[i];
+            if ((found & mask) != 0) continue;
+            if (others[i].accept(name)) {
+                found |= mask;
+                if (found == all) return found;
+            }
+        }
+
+        return found;
+    }
+
+    private static boolean hasLineTerminator(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            switch (name.charAt(i)) {
+                case '\n':
+                case '\r':
+                case '\u0085':
+                case '\u2028':
+                case '\u2029':
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the failure links of the Aho-Corasick automaton, breadth first, and merges
+     * the masks of the tokens ending at the failure node into each node
+     */
+    private static Node link(Node root) {
+        final LinkedList<Node> queue = new LinkedList<Node>();
+        for (Node child : root.children) {
+            child.fail = root;
+            queue.add(child);
+        }
+
+        while (!queue.isEmpty()) {
+            final Node node = queue.removeFirst();
+            for (int i = 0; i < node.keys.length; i++) {
+                final char c = node.keys[i];
+                final Node child = node.children[i];
+
+                Node fail = node.fail;
+                while (fail.child(c) == null && fail != root) {
+                    fail = fail.fail;
+                }
+                final Node target = fail.child(c);
+                child.fail = (target == null) ? root : target;
+                child.prefix |= child.fail.prefix;
+
+                queue.add(child);
+            }
+        }
+        return root;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledFilter{" + original + '}';
+    }
+
+    private static final class Builder {
+        private final Node prefixes = new Node();
+        private final Node suffixes = new Node();
+        private final Node tokens = new Node();
+        private final List<Filter> others = new ArrayList<Filter>();
+        private final List<Integer> otherMasks = new ArrayList<Integer>();
+        private int all;
+        private int compiled;
+        private boolean translated;
+        private boolean packages = true;
+
+        private void add(Filter filter, int mask) {
+            all |= mask;
+
+            if (filter instanceof FilterList) {
+                for (Filter f : ((FilterList) filter).getFilters()) {
+                    add(f, mask);
+                }
+                return;
+            }
+
+            if (filter instanceof CompiledFilter && ((CompiledFilter) filter).mode == Mode.ANY) {
+                add(((CompiledFilter) filter).original, mask);
+                return;
+            }
+
+            if (filter instanceof PackageFilter) {
+                prefixes.add(((PackageFilter) filter).getPackageName(), false).prefix |= mask;
+                compiled++;
+                return;
+            }
+
+            packages = false;
+
+            if (filter instanceof PrefixFilter) {
+                prefixes.add(((PrefixFilter) filter).getPrefix(), false).prefix |= mask;
+            } else if (filter instanceof ClassFilter) {
+                prefixes.add(((ClassFilter) filter).getName(), false).exact |= mask;
+            } else if (filter instanceof SuffixFilter) {
+                suffixes.add(((SuffixFilter) filter).getSuffix(), true).prefix |= mask;
+            } else if (filter instanceof ContainsFilter) {
+                tokens.add(((ContainsFilter) filter).getToken(), false).prefix |= mask;
+            } else if (filter instanceof PatternFilter && translate(((PatternFilter) filter), mask)) {
+                translated = true;
+            } else {
+                others.add(filter);
+                otherMasks.add(mask);
+                return;
+            }
+            compiled++;
+        }
+
+        /**
+         * Compiles the patterns which are a literal with an optional leading or trailing ".*"
+         */
+        private boolean translate(PatternFilter filter, int mask) {
+            if (filter.getPattern().flags() != 0) return false;
+
+            String expression = filter.getPattern().pattern();
+
+            final boolean anyStart = expression.startsWith(".*");
+            if (anyStart) expression = expression.substring(2);
+
+            boolean anyEnd = expression.endsWith(".*") && !expression.endsWith("\\.*");
+            if (anyEnd) expression = expression.substring(0, expression.length() - 2);
+
+            final String literal = literal(expression);
+            if (literal == null) return false;
+
+            if (anyStart && anyEnd) {
+                tokens.add(literal, false).prefix |= mask;
+            } else if (anyStart) {
+                suffixes.add(literal, true).prefix |= mask;
+            } else if (anyEnd) {
+                prefixes.add(literal, false).prefix |= mask;
+            } else {
+                prefixes.add(literal, false).exact |= mask;
+            }
+            return true;
+        }
+
+        /**
+         * @return the text matched by the expression, null if it is not a plain literal
+         */
+        private static String literal(String expression) {
+            final StringBuilder literal = new StringBuilder(expression.length());
+            for (int i = 0; i < expression.length(); i++) {
+                char c = expression.charAt(i);
+                if (c == '\\') {
+                    if (++i == expression.length()) return null;
+                    c = expression.charAt(i);
+                    // \d, \w, \Q... are not literals
+                    if (Character.isLetterOrDigit(c)) return null;
+                } else if (".$^*+?()[]{}|".indexOf(c) != -1) {
+                    return null;
+                }
+                literal.append(c);
+            }
+            return literal.toString();
+        }
+    }
+
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private int prefix;
+        private int exact;
+        private Node fail;
+
+        private boolean isEmpty() {
+            return keys.length == 0 && prefix == 0 && exact == 0;
+        }
+
+        private Node child(char c) {
+            final int i = Arrays.binarySearch(keys, c);
+            return (i < 0) ? null : children[i];
+        }
+
+        private Node add(String path, boolean reverse) {
+            Node node = this;
+            final int length = path.length();
+            for (int i = 0; i < length; i++) {
+                final char c = path.charAt(reverse ? length - 1 - i : i);
+                int index = Arrays.binarySearch(node.keys, c);
+                if (index < 0) {
+                    index = -index - 1;
+
+                    final char[] keys = new char[node.keys.length + 1];
+                    System.arraycopy(node.keys, 0, keys, 0, index);
+                    System.arraycopy(node.keys, index, keys, index + 1, node.keys.length - index);
+                    keys[index] = c;
+
+                    final Node[] children = new Node[node.children.length + 1];
+                    System.arraycopy(node.children, 0, children, 0, index);
+                    System.arraycopy(node.children, index, children, index + 1, node.children.length - index);
+                    children[index] = new Node();
+
+                    node.keys = keys;
+                    node.children = children;
+                }
+                node = node.children[index];
+            }
+            return node;
+        }
+    }
+}
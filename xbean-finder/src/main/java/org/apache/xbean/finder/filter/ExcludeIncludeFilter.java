@@ -30,6 +30,14 @@ public class ExcludeIncludeFilter implements Filter {
         this.exclude = exclude;
     }
 
+    public Filter getInclude() {
+        return include;
+    }
+
+    public Filter getExclude() {
+        return exclude;
+    }
+
     public boolean accept(String name) {
         if (exclude.accept(name)) return include.accept(name);
         return true;
@@ -88,6 +88,13 @@ public class Filters {
     }
 
 
+    /**
+     * Flattens the filter lists and compiles the package, prefix, class, suffix,
+     * contains and simple pattern filters of the result into a {@link CompiledFilter}.
+     * A single IncludeExcludeFilter or ExcludeIncludeFilter is compiled so both of its
+     * sides are evaluated in one walk of the name, a single PatternFilter is compiled if
+     * it is a literal.
+     */
     public static Filter optimize(Filter... filters) {
         return optimize(Arrays.asList(filters));
     }
@@ -108,8 +115,19 @@ public class Filters {
         }
 
         if (unwrapped.size() == 0) return NONE;
-        if (unwrapped.size() == 1) return unwrapped.iterator().next();
-        return new FilterList(unwrapped);
+        if (unwrapped.size() == 1) {
+            final Filter filter = unwrapped.iterator().next();
+            if (filter instanceof IncludeExcludeFilter || filter instanceof ExcludeIncludeFilter) return compile(filter);
+            // a pattern which is a literal is compiled, a regex is kept as is
+            if (filter instanceof PatternFilter) return compile(filter);
+            return filter;
+        }
+        return compile(new FilterList(unwrapped));
+    }
+
+    private static Filter compile(Filter filter) {
+        final CompiledFilter compiled = CompiledFilter.compile(filter);
+        return (compiled == null) ? filter : compiled;
     }
 
     /**
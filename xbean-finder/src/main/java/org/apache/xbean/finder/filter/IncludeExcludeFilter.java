@@ -31,6 +31,14 @@ public class IncludeExcludeFilter implements Filter {
         this.exclude = exclude;
     }
 
+    public Filter getInclude() {
+        return include;
+    }
+
+    public Filter getExclude() {
+        return exclude;
+    }
+
     public boolean accept(String name) {
         if (include.accept(name)) return !exclude.accept(name);
         return false;
@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.index;
+
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.apache.xbean.finder.archive.MappedJarArchive;
+import org.objectweb.asm.ClassReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A prebuilt index of the class definitions of an archive, written at build
+ * time into the archive itself so the AnnotationFinder never has to parse its
+ * bytecode at runtime.
+ * <p/>
+ * The index lists the names of the classes it holds with the CRC-32 of their bytecode.
+ * An index which does not list the classes of the archive it is read from, or whose
+ * checksums differ from the ones of the archive entries, is not used: it is stale, merged
+ * from several jars or the classes were rewritten after it was built, by a shading tool
+ * relocating them for instance.  The checksums of jars are the ones recorded in the jar,
+ * the bytecode of other archives is read to compute them.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ClassDefIndex {
+
+    public static final String RESOURCE = "META-INF/xbean-finder.idx";
+
+    private static final int MAGIC = 0x58424649; // XBFI
+    private static final int VERSION = 4;
+    private static final int ASM_FLAGS = ClassReader.SKIP_CODE + ClassReader.SKIP_DEBUG + ClassReader.SKIP_FRAMES;
+
+    private ClassDefIndex() {
+    }
+
+    /**
+     * Records the names, checksums and class definitions of the entries of the archive, but
+     * the META-INF ones.
+     *
+     * @return the number of classes written to the index
+     * @throws IOException if an entry cannot be read, or parsed by ASM, the message names it
+     */
+    public static int write(Archive archive, OutputStream out) throws IOException {
+        final List<String> names = new ArrayList<String>();
+        final List<Long> crcs = new ArrayList<Long>();
+        final ByteArrayOutputStream classDefs = new ByteArrayOutputStream();
+        final DataOutputStream defs = new DataOutputStream(classDefs);
+
+        for (Archive.Entry entry : archive) {
+            // the versioned classes of multi-release jars, jar archives do not list them
+            if (entry.getName().startsWith("META-INF.")) continue;
+
+            final byte[] bytecode = bytes(entry.getBytecode());
+            try {
+                new ClassReader(bytecode).accept(new ClassDefWriter(defs), ASM_FLAGS);
+            } catch (RuntimeException e) {
+                // ASM rejects the class file, a newer class file version for instance
+                throw (IOException) new IOException("Cannot index the class " + entry.getName() + ": " + e).initCause(e);
+            }
+            names.add(entry.getName());
+            crcs.add(crc(bytecode));
+        }
+
+        defs.flush();
+
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            data.writeUTF(names.get(i));
+            data.writeInt((int) crcs.get(i).longValue());
+        }
+        classDefs.writeTo(data);
+        data.flush();
+        return names.size();
+    }
+
+    /**
+     * @return the class definitions which can be replayed with a {@link ClassDefReader}
+     * @throws IOException if the index is not in a supported format
+     */
+    public static byte[] read(InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        readNames(data);
+        return readClassDefs(data);
+    }
+
+    /**
+     * @param archive the archive the index was read from
+     * @return the class definitions which can be replayed with a {@link ClassDefReader}, or null
+     * if the index does not list the classes of the archive with their current checksums
+     * @throws IOException if the index is not in a supported format
+     */
+    public static byte[] read(InputStream in, Archive archive) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        final Map<String, Long> crcs = readNames(data);
+
+        int listed = 0;
+        for (Archive.Entry entry : archive) {
+            final Long crc = crcs.get(entry.getName());
+            if (crc == null || crc != crc(archive, entry)) return null;
+            listed++;
+        }
+        if (listed != crcs.size()) return null;
+
+        return readClassDefs(data);
+    }
+
+    private static long crc(Archive archive, Archive.Entry entry) throws IOException {
+        final String name = entry.getName().replace('.', '/') + ".class";
+        if (archive instanceof JarArchive) return ((JarArchive) archive).getCrc(name);
+        if (archive instanceof MappedJarArchive) return ((MappedJarArchive) archive).getCrc(name);
+
+        return crc(bytes(entry.getBytecode()));
+    }
+
+    private static long crc(byte[] bytecode) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytecode);
+        return crc.getValue();
+    }
+
+    private static byte[] bytes(InputStream in) throws IOException {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the checksum of each class listed by the index
+     */
+    private static Map<String, Long> readNames(DataInputStream data) throws IOException {
+        if (data.readInt() != MAGIC) throw new IOException("Not an xbean-finder index");
+
+        final int version = data.readInt();
+        if (version != VERSION) throw new IOException("Unsupported xbean-finder index version " + version);
+
+        final int count = data.readInt();
+        final Map<String, Long> crcs = new HashMap<String, Long>();
+        for (int i = 0; i < count; i++) {
+            final String name = data.readUTF();
+            crcs.put(name, data.readInt() & 0xFFFFFFFFL);
+        }
+        return crcs;
+    }
+
+    private static byte[] readClassDefs(DataInputStream data) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        for (int read = data.read(buffer); read != -1; read = data.read(buffer)) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+}
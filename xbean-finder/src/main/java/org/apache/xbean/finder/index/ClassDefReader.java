@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.index;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import static org.apache.xbean.finder.index.ClassDefWriter.ANNOTATION;
+import static org.apache.xbean.finder.index.ClassDefWriter.ARRAY;
+import static org.apache.xbean.finder.index.ClassDefWriter.CLASS;
+import static org.apache.xbean.finder.index.ClassDefWriter.END;
+import static org.apache.xbean.finder.index.ClassDefWriter.ENUM;
+import static org.apache.xbean.finder.index.ClassDefWriter.FIELD;
+import static org.apache.xbean.finder.index.ClassDefWriter.METHOD;
+import static org.apache.xbean.finder.index.ClassDefWriter.PARAMETER_ANNOTATION;
+import static org.apache.xbean.finder.index.ClassDefWriter.VALUE;
+
+/**
+ * Replays the class definitions recorded by the {@link ClassDefWriter}
+ * onto a visitor, in the order ASM would have visited them.
+ *
+ * <pre>
+ * ClassDefReader reader = new ClassDefReader(data);
+ * while (reader.next() != null) {
+ *     reader.accept(visitor);
+ * }
+ * </pre>
+ *
+ * @version $Rev$ $Date$
+ */
+public class ClassDefReader {
+
+    private final DataInputStream in;
+    private int length = -1;
+
+    public ClassDefReader(byte[] data) {
+        this.in = new DataInputStream(new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Moves to the next record, skipping the current one if it was not accepted.
+     *
+     * @return the class name of the record or null if there are no more records
+     * @throws IOException
+     */
+    public String next() throws IOException {
+        if (length > 0) skip(length);
+        if (in.available() == 0) return null;
+
+        final String name = in.readUTF();
+        length = in.readInt();
+        return name;
+    }
+
+    public void accept(ClassVisitor cv) throws IOException {
+        if (length < 0) throw new IllegalStateException("next() must be called first");
+        length = -1;
+
+        if (in.readByte() != CLASS) throw new IOException("Corrupted class definition");
+
+        final int version = in.readInt();
+        final int access = in.readInt();
+        final String name = in.readUTF();
+        final String signature = readNullableString();
+        final String superName = readNullableString();
+        final String[] interfaces = readStrings();
+        cv.visit(version, access, name, signature, superName, interfaces);
+
+        for (int tag = in.readByte(); tag != END; tag = in.readByte()) {
+            switch (tag) {
+                case ANNOTATION: {
+                    final String desc = in.readUTF();
+                    readAnnotation(cv.visitAnnotation(desc, in.readBoolean()));
+                    break;
+                }
+                case FIELD: {
+                    final int fieldAccess = in.readInt();
+                    final String fieldName = in.readUTF();
+                    final String desc = in.readUTF();
+                    readField(cv.visitField(fieldAccess, fieldName, desc, readNullableString(), null));
+                    break;
+                }
+                case METHOD: {
+                    final int methodAccess = in.readInt();
+                    final String methodName = in.readUTF();
+                    final String desc = in.readUTF();
+                    final String methodSignature = readNullableString();
+                    readMethod(cv.visitMethod(methodAccess, methodName, desc, methodSignature, readStrings()));
+                    break;
+                }
+                default:
+                    throw new IOException("Corrupted class definition of " + name + ", unexpected tag " + tag);
+            }
+        }
+
+        cv.visitEnd();
+    }
+
+    private void readAnnotation(AnnotationVisitor av) throws IOException {
+        for (int tag = in.readByte(); tag != END; tag = in.readByte()) {
+            final String name = readNullableString();
+            switch (tag) {
+                case VALUE: {
+                    final Object value = readValue();
+                    if (av != null) av.visit(name, value);
+                    break;
+                }
+                case ENUM: {
+                    final String desc = in.readUTF();
+                    final String value = in.readUTF();
+                    if (av != null) av.visitEnum(name, desc, value);
+                    break;
+                }
+                case ANNOTATION: {
+                    final String desc = in.readUTF();
+                    readAnnotation(av == null ? null : av.visitAnnotation(name, desc));
+                    break;
+                }
+                case ARRAY:
+                    readAnnotation(av == null ? null : av.visitArray(name));
+                    break;
+                default:
+                    throw new IOException("Corrupted annotation definition, unexpected tag " + tag);
+            }
+        }
+
+        if (av != null) av.visitEnd();
+    }
+
+    private Object readValue() throws IOException {
+        final int type = in.readByte();
+        switch (type) {
+            case 's': return in.readUTF();
+            case 'I': return in.readInt();
+            case 'J': return in.readLong();
+            case 'Z': return in.readBoolean();
+            case 'B': return in.readByte();
+            case 'C': return in.readChar();
+            case 'S': return in.readShort();
+            case 'F': return in.readFloat();
+            case 'D': return in.readDouble();
+            case 'c': return Type.getType(in.readUTF());
+            default:
+                throw new IOException("Corrupted annotation value, unexpected type " + type);
+        }
+    }
+
+    private void readField(FieldVisitor fv) throws IOException {
+        for (int tag = in.readByte(); tag != END; tag = in.readByte()) {
+            if (tag != ANNOTATION) throw new IOException("Corrupted field definition, unexpected tag " + tag);
+
+            final String desc = in.readUTF();
+            final boolean visible = in.readBoolean();
+            readAnnotation(fv == null ? null : fv.visitAnnotation(desc, visible));
+        }
+
+        if (fv != null) fv.visitEnd();
+    }
+
+    private void readMethod(MethodVisitor mv) throws IOException {
+        for (int tag = in.readByte(); tag != END; tag = in.readByte()) {
+            if (tag == ANNOTATION) {
+                final String desc = in.readUTF();
+                final boolean visible = in.readBoolean();
+                readAnnotation(mv == null ? null : mv.visitAnnotation(desc, visible));
+            } else if (tag == PARAMETER_ANNOTATION) {
+                final int parameter = in.readInt();
+                final String desc = in.readUTF();
+                final boolean visible = in.readBoolean();
+                readAnnotation(mv == null ? null : mv.visitParameterAnnotation(parameter, desc, visible));
+            } else {
+                throw new IOException("Corrupted method definition, unexpected tag " + tag);
+            }
+        }
+
+        if (mv != null) mv.visitEnd();
+    }
+
+    private void skip(int bytes) throws IOException {
+        while (bytes > 0) {
+            final int skipped = in.skipBytes(bytes);
+            if (skipped <= 0) throw new IOException("Truncated class definition");
+            bytes -= skipped;
+        }
+        length = -1;
+    }
+
+    private String readNullableString() throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private String[] readStrings() throws IOException {
+        final String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+        return strings;
+    }
+}
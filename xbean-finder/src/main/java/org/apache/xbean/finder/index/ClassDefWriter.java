@@ -0,0 +1,315 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.index;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+
+/**
+ * Records the parts of a class definition the AnnotationFinder uses
+ * (names, super types, members and annotations) while passing the events
+ * on to the wrapped visitor.  The record is written to the output when the
+ * class has been fully visited and can be replayed with the {@link ClassDefReader}
+ * without parsing the bytecode again.
+ * <p/>
+ * A record is the class name followed by the length and the events of the class.
+ * The events of an annotation are the values of its elements, arrays of primitives
+ * are recorded as arrays of single values.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ClassDefWriter extends ClassVisitor {
+
+    static final int END = 0;
+    static final int CLASS = 1;
+    static final int ANNOTATION = 2;
+    static final int FIELD = 3;
+    static final int METHOD = 4;
+    static final int PARAMETER_ANNOTATION = 5;
+    static final int VALUE = 6;
+    static final int ENUM = 7;
+    static final int ARRAY = 8;
+
+    private final DataOutput out;
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+    private final DataOutputStream events = new DataOutputStream(bytes);
+    private String name;
+
+    public ClassDefWriter(DataOutput out) {
+        this(out, null);
+    }
+
+    public ClassDefWriter(DataOutput out, ClassVisitor cv) {
+        super(Opcodes.ASM5, cv);
+        this.out = out;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        this.name = name.replace('/', '.');
+        tag(CLASS);
+        writeInt(version);
+        writeInt(access);
+        writeString(name);
+        writeNullableString(signature);
+        writeNullableString(superName);
+        writeStrings(interfaces);
+        super.visit(version, access, name, signature, superName, interfaces);
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+        tag(ANNOTATION);
+        annotation(desc, visible);
+        return new AnnotationWriter(super.visitAnnotation(desc, visible));
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+        tag(FIELD);
+        writeInt(access);
+        writeString(name);
+        writeString(desc);
+        writeNullableString(signature);
+        return new FieldWriter(super.visitField(access, name, desc, signature, value));
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        tag(METHOD);
+        writeInt(access);
+        writeString(name);
+        writeString(desc);
+        writeNullableString(signature);
+        writeStrings(exceptions);
+        return new MethodWriter(super.visitMethod(access, name, desc, signature, exceptions));
+    }
+
+    @Override
+    public void visitEnd() {
+        tag(END);
+        try {
+            out.writeUTF(name);
+            out.writeInt(bytes.size());
+            out.write(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        super.visitEnd();
+    }
+
+    private void annotation(String desc, boolean visible) {
+        writeString(desc);
+        try {
+            events.writeBoolean(visible);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void tag(int tag) {
+        try {
+            events.writeByte(tag);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeInt(int value) {
+        try {
+            events.writeInt(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeString(String value) {
+        try {
+            events.writeUTF(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeNullableString(String value) {
+        try {
+            events.writeBoolean(value != null);
+            if (value != null) events.writeUTF(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeValue(Object value) {
+        try {
+            if (value instanceof String) {
+                events.writeByte('s');
+                events.writeUTF((String) value);
+            } else if (value instanceof Integer) {
+                events.writeByte('I');
+                events.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                events.writeByte('J');
+                events.writeLong((Long) value);
+            } else if (value instanceof Boolean) {
+                events.writeByte('Z');
+                events.writeBoolean((Boolean) value);
+            } else if (value instanceof Byte) {
+                events.writeByte('B');
+                events.writeByte((Byte) value);
+            } else if (value instanceof Character) {
+                events.writeByte('C');
+                events.writeChar((Character) value);
+            } else if (value instanceof Short) {
+                events.writeByte('S');
+                events.writeShort((Short) value);
+            } else if (value instanceof Float) {
+                events.writeByte('F');
+                events.writeFloat((Float) value);
+            } else if (value instanceof Double) {
+                events.writeByte('D');
+                events.writeDouble((Double) value);
+            } else if (value instanceof Type) {
+                events.writeByte('c');
+                events.writeUTF(((Type) value).getDescriptor());
+            } else {
+                throw new IllegalArgumentException("Unsupported annotation value " + value);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeStrings(String[] values) {
+        final int length = (values == null) ? 0 : values.length;
+        writeInt(length);
+        for (int i = 0; i < length; i++) {
+            writeString(values[i]);
+        }
+    }
+
+    private class AnnotationWriter extends AnnotationVisitor {
+        private AnnotationWriter(AnnotationVisitor av) {
+            super(Opcodes.ASM5, av);
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            if (value != null && value.getClass().isArray()) {
+                tag(ARRAY);
+                writeNullableString(name);
+                for (int i = 0; i < Array.getLength(value); i++) {
+                    tag(VALUE);
+                    writeNullableString(null);
+                    writeValue(Array.get(value, i));
+                }
+                tag(END);
+            } else {
+                tag(VALUE);
+                writeNullableString(name);
+                writeValue(value);
+            }
+            super.visit(name, value);
+        }
+
+        @Override
+        public void visitEnum(String name, String desc, String value) {
+            tag(ENUM);
+            writeNullableString(name);
+            writeString(desc);
+            writeString(value);
+            super.visitEnum(name, desc, value);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String name, String desc) {
+            tag(ANNOTATION);
+            writeNullableString(name);
+            writeString(desc);
+            return new AnnotationWriter(super.visitAnnotation(name, desc));
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(String name) {
+            tag(ARRAY);
+            writeNullableString(name);
+            return new AnnotationWriter(super.visitArray(name));
+        }
+
+        @Override
+        public void visitEnd() {
+            tag(END);
+            super.visitEnd();
+        }
+    }
+
+    private class FieldWriter extends FieldVisitor {
+        private FieldWriter(FieldVisitor fv) {
+            super(Opcodes.ASM5, fv);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            tag(ANNOTATION);
+            annotation(desc, visible);
+            return new AnnotationWriter(super.visitAnnotation(desc, visible));
+        }
+
+        @Override
+        public void visitEnd() {
+            tag(END);
+            super.visitEnd();
+        }
+    }
+
+    private class MethodWriter extends MethodVisitor {
+        private MethodWriter(MethodVisitor mv) {
+            super(Opcodes.ASM5, mv);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            tag(ANNOTATION);
+            annotation(desc, visible);
+            return new AnnotationWriter(super.visitAnnotation(desc, visible));
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(int parameter, String desc, boolean visible) {
+            tag(PARAMETER_ANNOTATION);
+            writeInt(parameter);
+            annotation(desc, visible);
+            return new AnnotationWriter(super.visitParameterAnnotation(parameter, desc, visible));
+        }
+
+        @Override
+        public void visitEnd() {
+            tag(END);
+            super.visitEnd();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Keeps the class definitions recorded while scanning a jar in a directory
+ * so the AnnotationFinder can rebuild its index from them on the next start
+ * instead of parsing the bytecode again.
+ * <p/>
+ * Entries are keyed by the path of the jar and are only used as long as the
+ * size and the last modification time of the jar did not change.  Entries
+ * which can not be read are treated as missing and simply rewritten.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ScanCache {
+
+    private static final int MAGIC = 0x58424653; // XBFS
+    private static final int VERSION = 2;
+
+    private final File directory;
+
+    /**
+     * @param directory where the entries are kept, nothing is kept if null
+     */
+    public ScanCache(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @param archive the jar file
+     * @return the recorded class definitions of the jar or null if there are none or the jar changed since
+     */
+    public byte[] load(File archive) {
+        if (directory == null) return null;
+
+        final File file = entry(archive);
+        if (!file.isFile()) return null;
+
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+                if (!in.readUTF().equals(archive.getAbsolutePath())) return null;
+                if (in.readLong() != archive.length() || in.readLong() != archive.lastModified()) return null;
+
+                final byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                return data;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param archive the jar file
+     * @param data the class definitions recorded with the {@link ClassDefWriter}
+     */
+    public void store(File archive, byte[] data) {
+        if (directory == null) return;
+        if (!directory.isDirectory() && !directory.mkdirs()) return;
+
+        final File file = entry(archive);
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(file.getName(), ".tmp", directory);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(archive.getAbsolutePath());
+                out.writeLong(archive.length());
+                out.writeLong(archive.lastModified());
+                out.writeInt(data.length);
+                out.write(data);
+            } finally {
+                out.close();
+            }
+
+            // replace the entry in one step so concurrent readers never see half a file
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file)) tmp.delete();
+            }
+        } catch (IOException e) {
+            // not fatal, the jar is scanned again next time
+            if (tmp != null) tmp.delete();
+        }
+    }
+
+    private File entry(File archive) {
+        final String path = archive.getAbsolutePath();
+        return new File(directory, archive.getName() + "-" + Integer.toHexString(path.hashCode()) + ".idx");
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.index;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A ScanCache kept in memory and shared by the finders of the whole JVM.
+ * <p/>
+ * Entries are keyed by the SHA-1 of the content of the jar, so applications
+ * bundling the same library in different locations share one entry and the
+ * library is only parsed once.  The recorded class definitions are held
+ * through soft references, the garbage collector reclaims them when memory
+ * runs low, for instance once the applications using them are undeployed.
+ * <p/>
+ * The content of a jar is only hashed again when its size or modification
+ * time changed.  Entries missing in memory are looked up in the directory
+ * given to the constructor, if any, and stored there as well.
+ * <p/>
+ * Finders created without a scan cache use the shared instance when the
+ * xbean.finder.shared-scan-cache system property is set to true.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SharedScanCache extends ScanCache {
+
+    public static final String PROPERTY = "xbean.finder.shared-scan-cache";
+
+    private static final SharedScanCache INSTANCE = new SharedScanCache(null);
+    private static final boolean DEFAULT = Boolean.getBoolean(PROPERTY);
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final ConcurrentMap<String, Stamp> hashes = new ConcurrentHashMap<String, Stamp>();
+    private final ReferenceQueue<byte[]> collected = new ReferenceQueue<byte[]>();
+
+    /**
+     * @param directory where the entries are also kept on disk, nothing is kept on disk if null
+     */
+    public SharedScanCache(File directory) {
+        super(directory);
+    }
+
+    /**
+     * @return the cache shared by the finders of the JVM, kept in memory only
+     */
+    public static SharedScanCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the shared instance if the xbean.finder.shared-scan-cache system property is true, null otherwise
+     */
+    public static ScanCache getDefault() {
+        return DEFAULT ? INSTANCE : null;
+    }
+
+    @Override
+    public byte[] load(File archive) {
+        expunge();
+
+        final String hash = hash(archive);
+        if (hash != null) {
+            final Entry entry = entries.get(hash);
+            final byte[] data = (entry == null) ? null : entry.get();
+            if (data != null) return data;
+        }
+
+        final byte[] data = super.load(archive);
+        if (data != null && hash != null) {
+            entries.put(hash, new Entry(hash, data, collected));
+        }
+        return data;
+    }
+
+    @Override
+    public void store(File archive, byte[] data) {
+        expunge();
+
+        final String hash = hash(archive);
+        if (hash != null) {
+            entries.put(hash, new Entry(hash, data, collected));
+        }
+
+        super.store(archive, data);
+    }
+
+    /**
+     * @return the number of jars whose class definitions are in memory
+     */
+    public int size() {
+        expunge();
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        hashes.clear();
+    }
+
+    private void expunge() {
+        for (Entry entry = (Entry) collected.poll(); entry != null; entry = (Entry) collected.poll()) {
+            entries.remove(entry.hash, entry);
+        }
+    }
+
+    private String hash(File archive) {
+        final String path = archive.getAbsolutePath();
+        final long length = archive.length();
+        final long lastModified = archive.lastModified();
+
+        final Stamp stamp = hashes.get(path);
+        if (stamp != null && stamp.length == length && stamp.lastModified == lastModified) {
+            return stamp.hash;
+        }
+
+        try {
+            final String hash = digest(archive);
+            hashes.put(path, new Stamp(length, lastModified, hash));
+            return hash;
+        } catch (IOException e) {
+            // can't be shared, the jar is scanned
+            hashes.remove(path);
+            return null;
+        }
+    }
+
+    private static String digest(File archive) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final InputStream in = new FileInputStream(archive);
+        try {
+            final byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+
+        final StringBuilder hash = new StringBuilder(40);
+        for (byte b : digest.digest()) {
+            hash.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hash.toString();
+    }
+
+    private static final class Entry extends SoftReference<byte[]> {
+        private final String hash;
+
+        private Entry(String hash, byte[] data, ReferenceQueue<byte[]> queue) {
+            super(data, queue);
+            this.hash = hash;
+        }
+    }
+
+    private static final class Stamp {
+        private final long length;
+        private final long lastModified;
+        private final String hash;
+
+        private Stamp(long length, long lastModified, String hash) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.util;
+
+import org.objectweb.asm.ClassReader;
+
+/**
+ * The class file versions the ASM found at runtime can read, ASM 5 stops at Java 8.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class ClassFileVersions {
+
+    private static final int JAVA_1_1 = 45;
+
+    private static volatile int maxRelease;
+
+    /**
+     * @param release a Java release, 8 or 17 for instance
+     * @return true if ClassReader accepts the class files of that release
+     */
+    public static boolean isReadable(int release) {
+        return release <= maxRelease();
+    }
+
+    /**
+     * @return the highest Java release ClassReader accepts the class files of
+     */
+    public static int maxRelease() {
+        if (maxRelease == 0) {
+            int release = 1;
+            while (release < 99 && readable(release + 1)) {
+                release++;
+            }
+            maxRelease = release;
+        }
+        return maxRelease;
+    }
+
+    private static boolean readable(int release) {
+        final int major = release < 2 ? JAVA_1_1 : JAVA_1_1 + release - 1;
+        // the header of a class file with an empty constant pool, ClassReader checks the version first
+        final byte[] header = {
+                (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE,
+                0, 0,
+                (byte) (major >>> 8), (byte) major,
+                0, 1
+        };
+        try {
+            new ClassReader(header);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private ClassFileVersions() {
+        // no-op
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.util;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Collection;
+
+/**
+ * Looks for strings in the constant pool of a class file without parsing
+ * the rest of the class.
+ * <p/>
+ * Annotations are referred to by their descriptor from the constant pool of
+ * every class using them, so a class which has none of the descriptors in its
+ * pool can't carry any of those annotations, on itself or on its members.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class ConstantPool {
+
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int FLOAT = 4;
+    private static final int LONG = 5;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELD_REF = 9;
+    private static final int METHOD_REF = 10;
+    private static final int INTERFACE_METHOD_REF = 11;
+    private static final int NAME_AND_TYPE = 12;
+    private static final int METHOD_HANDLE = 15;
+    private static final int METHOD_TYPE = 16;
+    private static final int DYNAMIC = 17;
+    private static final int INVOKE_DYNAMIC = 18;
+    private static final int MODULE = 19;
+    private static final int PACKAGE = 20;
+
+    private final byte[][] values;
+
+    /**
+     * @param values the strings to look for, class names must be given in their
+     * internal form, annotations as descriptors (Lorg/acme/Foo;)
+     */
+    public ConstantPool(Collection<String> values) {
+        this.values = new byte[values.size()][];
+        int i = 0;
+        for (String value : values) {
+            this.values[i++] = utf8(value);
+        }
+    }
+
+    /**
+     * Tells if one of the strings is in the constant pool of the class.
+     * Also true when the class file can't be understood, the caller should
+     * then read the class completely.
+     *
+     * @param bytecode the content of a class file
+     */
+    public boolean containsAny(byte[] bytecode) {
+        try {
+            final int count = u2(bytecode, 8);
+
+            int offset = 10;
+            for (int i = 1; i < count; i++) {
+                switch (bytecode[offset]) {
+                    case UTF8:
+                        final int length = u2(bytecode, offset + 1);
+                        if (matches(bytecode, offset + 3, length)) return true;
+                        offset += 3 + length;
+                        break;
+                    case CLASS:
+                    case STRING:
+                    case METHOD_TYPE:
+                    case MODULE:
+                    case PACKAGE:
+                        offset += 3;
+                        break;
+                    case METHOD_HANDLE:
+                        offset += 4;
+                        break;
+                    case INTEGER:
+                    case FLOAT:
+                    case FIELD_REF:
+                    case METHOD_REF:
+                    case INTERFACE_METHOD_REF:
+                    case NAME_AND_TYPE:
+                    case DYNAMIC:
+                    case INVOKE_DYNAMIC:
+                        offset += 5;
+                        break;
+                    case LONG:
+                    case DOUBLE:
+                        // takes two entries of the pool
+                        offset += 9;
+                        i++;
+                        break;
+                    default:
+                        return true;
+                }
+            }
+
+            return false;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return true;
+        }
+    }
+
+    private boolean matches(byte[] bytecode, int offset, int length) {
+        for (byte[] value : values) {
+            if (value.length != length) continue;
+
+            int i = 0;
+            while (i < length && value[i] == bytecode[offset + i]) i++;
+
+            if (i == length) return true;
+        }
+        return false;
+    }
+
+    private static int u2(byte[] bytecode, int offset) {
+        return ((bytecode[offset] & 0xFF) << 8) | (bytecode[offset + 1] & 0xFF);
+    }
+
+    private static byte[] utf8(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.apache.xbean.finder.util;
 
 import java.lang.reflect.Array;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
@@ -31,9 +32,9 @@ public class SingleLinkedList<E> implements List<E> {
     private class Entry<E> {
 
         private E value;
-        private Entry next;
+        private Entry<E> next;
 
-        private Entry(E value, Entry next) {
+        private Entry(E value, Entry<E> next) {
             this.value = value;
             this.next = next;
         }
@@ -91,7 +92,7 @@ public class SingleLinkedList<E> implements List<E> {
     }
 
     public boolean remove(Object o) {
-        throw new UnsupportedOperationException("remove");
+        return removeAll(Collections.singleton(o));
     }
 
     public boolean containsAll(Collection<?> c) {
@@ -107,7 +108,24 @@ public class SingleLinkedList<E> implements List<E> {
     }
 
     public boolean removeAll(Collection<?> c) {
-        throw new UnsupportedOperationException("removeAll");
+        boolean modified = false;
+        Entry<E> previous = null;
+
+        for (Entry<E> current = this.entry; current != null; current = current.next) {
+            if (c.contains(current.value)) {
+                if (previous == null) {
+                    this.entry = current.next;
+                } else {
+                    previous.next = current.next;
+                }
+                size--;
+                modified = true;
+            } else {
+                previous = current;
+            }
+        }
+
+        return modified;
     }
 
     public boolean retainAll(Collection<?> c) {
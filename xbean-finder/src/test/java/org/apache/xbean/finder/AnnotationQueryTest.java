@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class AnnotationQueryTest {
+
+    private AnnotationFinder finder;
+
+    @Before
+    public void setUp() throws Exception {
+        finder = new AnnotationFinder(new ClassesArchive(OnlyA.class, AB.class, ABC.class, OnlyC.class, Blue.class, Green.class, Red.class), false);
+    }
+
+    @Test
+    public void testAnd() throws Exception {
+        assertEquals(set(AB.class, ABC.class), set(finder.query().annotatedWith(A.class).and(B.class).find()));
+    }
+
+    @Test
+    public void testNot() throws Exception {
+        assertEquals(set(AB.class), set(finder.query().annotatedWith(A.class).and(B.class).not(C.class).find()));
+        assertEquals(set(OnlyA.class, AB.class), set(finder.query().annotatedWith(A.class).not(C.class).find()));
+    }
+
+    @Test
+    public void testOr() throws Exception {
+        assertEquals(set(OnlyA.class, AB.class, ABC.class, OnlyC.class), set(finder.query().annotatedWith(A.class).or(C.class).find()));
+    }
+
+    @Test
+    public void testInPackage() throws Exception {
+        assertEquals(3, finder.query().annotatedWith(Color.class).inPackage("org.acme.foo").count());
+        assertEquals(0, finder.query().annotatedWith(Color.class).inPackage("org.acme").count());
+        assertEquals(3, finder.query().annotatedWith(Color.class).inPackage("org.acme", true).count());
+        assertEquals(0, finder.query().annotatedWith(A.class).inPackage("org.acme", true).count());
+    }
+
+    @Test
+    public void testSameAsFindAnnotatedClasses() throws Exception {
+        assertEquals(set(finder.findAnnotatedClasses(Color.class)), set(finder.query().annotatedWith(Color.class).find()));
+    }
+
+    @Test
+    public void testFindClassNames() throws Exception {
+        final List<String> names = finder.query().annotatedWith(C.class).findClassNames();
+
+        assertEquals(set(ABC.class.getName(), OnlyC.class.getName()), new HashSet<String>(names));
+    }
+
+    @Test
+    public void testAfterUpdate() throws Exception {
+        assertEquals(2, finder.query().annotatedWith(C.class).count());
+
+        finder.update(Collections.<String>emptyList(), Arrays.asList(OnlyC.class.getName()));
+
+        assertEquals(1, finder.query().annotatedWith(C.class).count());
+    }
+
+    private static <T> HashSet<T> set(T... values) {
+        return new HashSet<T>(Arrays.asList(values));
+    }
+
+    private static HashSet<Class<?>> set(List<Class<?>> values) {
+        return new HashSet<Class<?>>(values);
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public static @interface A {
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public static @interface B {
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public static @interface C {
+    }
+
+    @A
+    public static class OnlyA {
+    }
+
+    @A @B
+    public static class AB {
+    }
+
+    @A @B @C
+    public static class ABC {
+    }
+
+    @C
+    public static class OnlyC {
+    }
+}
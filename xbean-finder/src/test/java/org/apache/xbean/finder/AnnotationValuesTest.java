@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.AnnotationFinder.AnnotationInfo;
+import org.apache.xbean.finder.AnnotationFinder.ClassInfo;
+import org.apache.xbean.finder.AnnotationFinder.EnumValue;
+import org.apache.xbean.finder.AnnotationFinder.Info;
+import org.apache.xbean.finder.AnnotationFinder.TypeValue;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.apache.xbean.finder.index.ScanCache;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class AnnotationValuesTest {
+
+    private static final String VALUES = Values.class.getName();
+
+    @Test
+    public void testValues() throws Exception {
+        assertValues(new AnnotationFinder(new ClassesArchive(Annotated.class, Plain.class), false));
+    }
+
+    @Test
+    public void testValuesFromScanCache() throws Exception {
+        final File jar = Archives.jarArchive(new Class[]{Annotated.class, Plain.class});
+        final File directory = File.createTempFile("scan", "cache");
+        assertTrue(directory.delete());
+        final ScanCache cache = new ScanCache(directory);
+
+        new AnnotationFinder(new JarArchive(getClass().getClassLoader(), jar.toURI().toURL()), false, null, cache);
+        final AnnotationFinder cached = new AnnotationFinder(new JarArchive(getClass().getClassLoader(), jar.toURI().toURL()), false, null, cache);
+
+        assertValues(cached);
+    }
+
+    @Test
+    public void testFindByValue() throws Exception {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(Annotated.class, Plain.class), false);
+
+        assertEquals(1, finder.findAnnotatedInfos(VALUES, "name", "type").size());
+        assertEquals(Plain.class.getName(), finder.findAnnotatedInfos(VALUES, "name", "plain").get(0).getName());
+        assertEquals(2, finder.findAnnotatedInfos(VALUES, "number", 42).size());
+        assertEquals(1, finder.findAnnotatedInfos(VALUES, "names", "b").size());
+        assertEquals(1, finder.findAnnotatedInfos(VALUES, "kind", ElementType.METHOD).size());
+        assertEquals(1, finder.findAnnotatedInfos(VALUES, "type", String.class).size());
+        assertEquals(1, finder.findAnnotatedInfos(VALUES, "longs", 2L).size());
+        assertTrue(finder.findAnnotatedInfos(VALUES, "name", "none").isEmpty());
+
+        final List<Info> parameters = finder.findAnnotatedInfos(VALUES, "name", "param");
+        assertEquals(1, parameters.size());
+        assertTrue(parameters.get(0) instanceof AnnotationFinder.ParameterInfo);
+    }
+
+    private void assertValues(AnnotationFinder finder) {
+        final ClassInfo info = finder.classInfos.get(Annotated.class.getName());
+        final AnnotationInfo values = info.getAnnotations().get(0);
+
+        assertEquals(VALUES, values.getName());
+        assertEquals("type", values.getValue("name"));
+        assertEquals(42, values.getValue("number"));
+        assertEquals(true, values.getValue("flag"));
+        assertEquals('x', values.getValue("c"));
+        assertEquals(1.5d, values.getValue("d"));
+        assertEquals(Arrays.asList(1L, 2L), values.getValue("longs"));
+        assertEquals(Arrays.asList("a", "b"), values.getValue("names"));
+        assertEquals(new EnumValue(ElementType.class.getName(), "METHOD"), values.getValue("kind"));
+        assertEquals(new TypeValue(String.class.getName()), values.getValue("type"));
+        assertEquals(new TypeValue(String[].class.getName()), values.getValue("array"));
+        assertNull(values.getValue("missing"));
+
+        final AnnotationInfo nested = (AnnotationInfo) values.getValue("nested");
+        assertEquals(Nested.class.getName(), nested.getName());
+        assertEquals("n", nested.getValue("value"));
+
+        final List<?> all = (List<?>) values.getValue("all");
+        assertEquals(2, all.size());
+        assertEquals("two", ((AnnotationInfo) all.get(1)).getValue("value"));
+
+        // only the elements given are known, not the defaults
+        final AnnotationInfo field = info.getFields().get(0).getAnnotations().get(0);
+        assertEquals(1, field.getValues().size());
+        assertEquals("field", field.getValue("name"));
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public static @interface Nested {
+        String value() default "";
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public static @interface Values {
+        String name() default "";
+        int number() default 0;
+        boolean flag() default false;
+        char c() default 'a';
+        double d() default 0;
+        long[] longs() default {};
+        String[] names() default {};
+        ElementType kind() default ElementType.TYPE;
+        Class<?> type() default Object.class;
+        Class<?> array() default Object.class;
+        Nested nested() default @Nested;
+        Nested[] all() default {};
+    }
+
+    @Values(name = "type", number = 42, flag = true, c = 'x', d = 1.5, longs = {1, 2}, names = {"a", "b"},
+            kind = ElementType.METHOD, type = String.class, array = String[].class,
+            nested = @Nested("n"), all = {@Nested("one"), @Nested("two")})
+    public static class Annotated {
+        @Values(name = "field")
+        private String field;
+
+        public void method(@Values(name = "param") String param) {
+        }
+    }
+
+    @Values(name = "plain", number = 42)
+    public static class Plain {
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.bar.FullyAnnotated;
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.apache.xbean.finder.archive.CompositeArchive;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class BackgroundAnnotationFinderTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSameIndexAsSynchronousScan() throws Exception {
+        final Archive archive = new CompositeArchive(
+                new ClassesArchive(Blue.class, Blue.Navy.class, Blue.Sky.class),
+                new ClassesArchive(Green.class, Green.Emerald.class, FullyAnnotated.class),
+                new ClassesArchive(Red.class, Red.CandyApple.class, Red.Pink.class));
+
+        final AnnotationFinder scanned = new AnnotationFinder(archive, false);
+        final AnnotationFinder background = AnnotationFinder.scanInBackground(archive, false, executor).awaitScan();
+
+        assertEquals(scanned.classInfos.keySet(), background.classInfos.keySet());
+        assertEquals(scanned.getAnnotatedClassNames().size(), background.getAnnotatedClassNames().size());
+        for (Map.Entry<String, List<AnnotationFinder.Info>> entry : scanned.annotated.entrySet()) {
+            assertEquals(entry.getKey(), names(entry.getValue()), names(background.annotated.get(entry.getKey())));
+        }
+    }
+
+    @Test
+    public void testQueriesWaitForTheScan() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Archive slow = new Blocking(new ClassesArchive(Blue.class, Red.class), release, null);
+
+        final AnnotationFinder finder = AnnotationFinder.scanInBackground(slow, false, executor);
+        assertFalse(finder.isScanned());
+
+        release.countDown();
+        assertEquals(2, finder.findAnnotatedClasses(Color.class).size());
+        assertTrue(finder.isScanned());
+    }
+
+    @Test
+    public void testEagerArchivesFirst() throws Exception {
+        final ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+            // holds the only thread until all the tasks are submitted
+            final Archive first = new Blocking(new ClassesArchive(Blue.class), release, order);
+            final Archive second = new Blocking(new ClassesArchive(Green.class), null, order);
+            final Archive third = new Blocking(new ClassesArchive(Red.class), null, order);
+
+            final AnnotationFinder finder = AnnotationFinder.scanInBackground(new CompositeArchive(first, second, third), false, single, first, third);
+            release.countDown();
+            finder.awaitScan();
+
+            assertEquals(Arrays.asList(Blue.class.getName(), Red.class.getName(), Green.class.getName()), order);
+            assertEquals(3, finder.findAnnotatedClasses(Color.class).size());
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOwnThread() throws Exception {
+        final AnnotationFinder finder = AnnotationFinder.scanInBackground(new ClassesArchive(Blue.class, Green.class), false, null);
+        assertEquals(2, finder.link().findImplementations(org.acme.foo.Primary.class).size());
+    }
+
+    @Test
+    public void testFailureIsKept() throws Exception {
+        final Archive broken = new ClassesArchive(Green.class) {
+            @Override
+            public Iterator<Entry> iterator() {
+                throw new IllegalArgumentException("broken");
+            }
+        };
+        final AnnotationFinder finder = AnnotationFinder.scanInBackground(new CompositeArchive(new ClassesArchive(Blue.class), broken), false, executor);
+
+        try {
+            finder.awaitScan();
+            fail("IllegalArgumentException should have been thrown");
+        } catch (IllegalArgumentException e) {
+            assertEquals("broken", e.getMessage());
+        }
+
+        // the index is partial, the queries do not hide it
+        for (int i = 0; i < 2; i++) {
+            try {
+                finder.findAnnotatedClasses(Color.class);
+                fail("IllegalStateException should have been thrown");
+            } catch (IllegalStateException e) {
+                assertEquals("broken", e.getCause().getMessage());
+            }
+        }
+    }
+
+    private static List<String> names(List<AnnotationFinder.Info> infos) {
+        final List<String> names = new ArrayList<String>();
+        for (AnnotationFinder.Info info : infos) {
+            names.add(info.toString());
+        }
+        return names;
+    }
+
+    /**
+     * Waits for the latch before listing its entries and records the order archives are scanned in
+     */
+    private static class Blocking implements Archive {
+        private final Archive archive;
+        private final CountDownLatch latch;
+        private final List<String> order;
+
+        private Blocking(Archive archive, CountDownLatch latch, List<String> order) {
+            this.archive = archive;
+            this.latch = latch;
+            this.order = order;
+        }
+
+        public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+            return archive.getBytecode(className);
+        }
+
+        public Class<?> loadClass(String className) throws ClassNotFoundException {
+            return archive.loadClass(className);
+        }
+
+        public Iterator<Entry> iterator() {
+            if (latch != null) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            final Iterator<Entry> iterator = archive.iterator();
+            if (order != null) {
+                for (Entry entry : archive) {
+                    order.add(entry.getName());
+                }
+            }
+            return iterator;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ClassHierarchyTest {
+
+    private static final Class[] classes = {Shape.class, Polygon.class, Square.class, Box.class, Circle.class, Disc.class};
+
+    private AnnotationFinder linked;
+    private AnnotationFinder indexed;
+
+    @Before
+    public void setUp() throws Exception {
+        linked = new AnnotationFinder(new ClassesArchive(classes), false).link();
+        indexed = new AnnotationFinder(new ClassesArchive(classes), false).enableHierarchyIndex();
+    }
+
+    @Test
+    public void testFindSubclasses() throws Exception {
+        assertEquals(set(Box.class), set(indexed.findSubclasses(Square.class)));
+        assertEquals(set(linked.findSubclasses(Square.class)), set(indexed.findSubclasses(Square.class)));
+        assertEquals(set(linked.findSubclasses(Circle.class)), set(indexed.findSubclasses(Circle.class)));
+    }
+
+    @Test
+    public void testFindImplementations() throws Exception {
+        assertEquals(set(Polygon.class, Square.class, Box.class, Circle.class, Disc.class), set(indexed.findImplementations(Shape.class)));
+        assertEquals(set(linked.findImplementations(Shape.class)), set(indexed.findImplementations(Shape.class)));
+        assertEquals(set(linked.findImplementations(Polygon.class)), set(indexed.findImplementations(Polygon.class)));
+    }
+
+    @Test
+    public void testFindInheritedAnnotatedClasses() throws Exception {
+        assertEquals(set(Square.class, Box.class), set(indexed.findInheritedAnnotatedClasses(Marked.class)));
+        assertEquals(set(linked.findInheritedAnnotatedClasses(Marked.class)), set(indexed.findInheritedAnnotatedClasses(Marked.class)));
+    }
+
+    @Test
+    public void testParentsOutsideTheArchive() throws Exception {
+        // Square and the interfaces are only found by linking
+        final AnnotationFinder linked = new AnnotationFinder(new ClassesArchive(Box.class), false).link();
+        final AnnotationFinder indexed = new AnnotationFinder(new ClassesArchive(Box.class), false).enableHierarchyIndex();
+
+        assertTrue(indexed.findImplementations(Shape.class).contains(Box.class));
+        assertEquals(set(linked.findImplementations(Shape.class)), set(indexed.findImplementations(Shape.class)));
+        assertEquals(set(linked.findSubclasses(Square.class)), set(indexed.findSubclasses(Square.class)));
+    }
+
+    @Test
+    public void testTypesKnownByName() throws Exception {
+        final List<AnnotationFinder.ClassInfo> infos = indexed.hierarchy().getSubtypes(Serializable.class.getName());
+
+        assertEquals(2, infos.size());
+        assertEquals(0, indexed.hierarchy().getSubtypes("org.acme.Unknown").size());
+    }
+
+    private static HashSet<Class<?>> set(Class<?>... classes) {
+        return new HashSet<Class<?>>(Arrays.asList(classes));
+    }
+
+    private static HashSet<Class<?>> set(List<? extends Class<?>> classes) {
+        return new HashSet<Class<?>>(classes);
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public static @interface Marked {
+    }
+
+    public static interface Shape {
+    }
+
+    public static interface Polygon extends Shape {
+    }
+
+    @Marked
+    public static class Square implements Polygon {
+    }
+
+    public static class Box extends Square {
+    }
+
+    public static class Circle implements Shape, Serializable {
+    }
+
+    public static class Disc extends Circle {
+    }
+}
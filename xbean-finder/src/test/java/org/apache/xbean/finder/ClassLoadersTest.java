@@ -18,9 +18,18 @@ package org.apache.xbean.finder;
 
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -38,4 +47,65 @@ public class ClassLoadersTest {
         assertTrue(ClassLoaders.isNative(new URL("jar:" + base + "!/")));
         assertFalse(ClassLoaders.isNative(new URL("jar:" + base + ".jar!/")));
     }
+
+    @Test
+    public void testCache() throws Exception {
+        final URL a = new File("target/a.jar").toURI().toURL();
+        final URL b = new File("target/b.jar").toURI().toURL();
+        final GrowingClassLoader loader = new GrowingClassLoader(a);
+
+        final Set<URL> urls = ClassLoaders.findUrls(loader);
+        assertTrue(urls.contains(a));
+        assertFalse(urls.contains(b));
+
+        // the cached set is not the one returned
+        urls.clear();
+        assertEquals(ClassLoaders.findUrls(loader), ClassLoaders.findUrls(loader));
+        assertTrue(ClassLoaders.findUrls(loader).contains(a));
+
+        // a new url invalidates the cached urls of the loader and of its children
+        final URLClassLoader child = new URLClassLoader(new URL[0], loader);
+        assertFalse(ClassLoaders.findUrls(child).contains(b));
+        loader.add(b);
+        assertTrue(ClassLoaders.findUrls(loader).contains(b));
+        assertTrue(ClassLoaders.findUrls(child).contains(b));
+    }
+
+    @Test
+    public void testNotCachedBelowOtherLoaders() throws Exception {
+        final URL a = new File("target/a.jar").toURI().toURL();
+        final URL c = new File("target/c/").toURI().toURL();
+        final ResourceClassLoader parent = new ResourceClassLoader();
+        final URLClassLoader loader = new URLClassLoader(new URL[]{a}, parent);
+
+        assertFalse(ClassLoaders.findUrls(loader).contains(c));
+
+        // the urls of a parent which is no URLClassLoader can change unnoticed
+        parent.roots.add(c);
+        assertTrue(ClassLoaders.findUrls(loader).contains(c));
+    }
+
+    public static class ResourceClassLoader extends ClassLoader {
+        private final List<URL> roots = new ArrayList<URL>();
+
+        public ResourceClassLoader() {
+            super(null);
+        }
+
+        @Override
+        public Enumeration<URL> getResources(String name) throws IOException {
+            if ("".equals(name)) return Collections.enumeration(roots);
+            return super.getResources(name);
+        }
+    }
+
+    public static class GrowingClassLoader extends URLClassLoader {
+        public GrowingClassLoader(URL... urls) {
+            super(urls, ClassLoadersTest.class.getClassLoader());
+        }
+
+        public void add(URL url) {
+            addURL(url);
+        }
+    }
 }
@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.bar.Construct;
+import org.acme.bar.Field;
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.Method;
+import org.acme.bar.ParamA;
+import org.acme.bar.ParamB;
+import org.acme.bar.Type;
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class CompactAnnotationFinderTest {
+
+    private static final Class[] classes = {
+            Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Green.Emerald.class,
+            Red.class, Red.CandyApple.class, Red.Pink.class, FullyAnnotated.class
+    };
+
+    @Test
+    public void testFind() throws Exception {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(classes), false).link().compact();
+
+        assertEquals(8, finder.findAnnotatedClasses(Color.class).size());
+        assertEquals(1, finder.findAnnotatedClasses(Type.class).size());
+        assertEquals(1, finder.findAnnotatedConstructors(Construct.class).size());
+        assertEquals(7, finder.findAnnotatedFields(Field.class).size());
+        assertTrue(finder.findAnnotatedMethods(Method.class).size() > 0);
+        assertEquals(1, finder.findAnnotatedConstructorParameters(ParamA.class).size());
+        assertEquals(1, finder.findAnnotatedConstructorParameters(ParamB.class).size());
+        assertEquals(1, finder.findAnnotatedMethodParameters(ParamB.class).size());
+        assertEquals(1, finder.findSubclasses(Green.class).size());
+    }
+
+    @Test
+    public void testSharedNames() throws Exception {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(classes), false);
+
+        final AnnotationFinder.ClassInfo red = finder.classInfos.get(Red.class.getName());
+        final AnnotationFinder.ClassInfo green = finder.classInfos.get(Green.class.getName());
+        assertSame(red.getSuperType(), green.getSuperType());
+        assertSame(red.getAnnotations().get(0).getName(), green.getAnnotations().get(0).getName());
+
+        finder.compact();
+
+        final AnnotationFinder.ClassInfo emerald = finder.classInfos.get(Green.Emerald.class.getName());
+        assertSame(Collections.emptyList(), emerald.getFields());
+        assertEquals(1, emerald.getAnnotations().size());
+
+        try {
+            emerald.getAnnotations().clear();
+            fail("compacted lists are read only");
+        } catch (UnsupportedOperationException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testUpdateAfterCompact() throws Exception {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(classes), false).link().compact();
+
+        finder.update(Collections.singletonList(Green.class.getName()), Collections.<String>emptyList());
+
+        assertEquals(8, finder.findAnnotatedClasses(Color.class).size());
+        assertEquals(1, finder.findSubclasses(Green.class).size());
+    }
+}
@@ -18,11 +18,21 @@ package org.apache.xbean.finder;
 
 import junit.framework.TestCase;
 import org.apache.xbean.finder.filter.ClassFilter;
+import org.apache.xbean.finder.filter.CompiledFilter;
+import org.apache.xbean.finder.filter.ContainsFilter;
 import org.apache.xbean.finder.filter.ExcludeIncludeFilter;
 import org.apache.xbean.finder.filter.Filter;
 import org.apache.xbean.finder.filter.FilterList;
 import org.apache.xbean.finder.filter.Filters;
 import org.apache.xbean.finder.filter.IncludeExcludeFilter;
+import org.apache.xbean.finder.filter.PackageFilter;
+import org.apache.xbean.finder.filter.PatternFilter;
+import org.apache.xbean.finder.filter.PrefixFilter;
+import org.apache.xbean.finder.filter.SuffixFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 /**
  * @version $Rev$ $Date$
@@ -114,4 +124,128 @@ public class FiltersTest extends TestCase {
         assertTrue(filter.accept("org.foo.util.Blue"));
     }
 
+    public void testPrefixes() throws Exception {
+        Filter filter = Filters.prefixes("org.foo", "org.foobar", "com");
+
+        assertTrue(filter instanceof CompiledFilter);
+        assertTrue(filter.accept("org.foo"));
+        assertTrue(filter.accept("org.fooo.Red"));
+        assertTrue(filter.accept("com"));
+
+        assertFalse(filter.accept("org.fo"));
+        assertFalse(filter.accept("co"));
+        assertFalse(filter.accept(""));
+    }
+
+    public void testTokens() throws Exception {
+        Filter filter = Filters.tokens("abcd", "bce", "cd.x");
+
+        assertTrue(filter.accept("abce"));
+        assertTrue(filter.accept("zabcd"));
+        assertTrue(filter.accept("abcd.x"));
+        assertTrue(filter.accept("abcbce"));
+
+        assertFalse(filter.accept("abc"));
+        assertFalse(filter.accept("abcbcd"));
+        assertFalse(filter.accept(""));
+    }
+
+    public void testSuffixes() throws Exception {
+        Filter filter = Filters.suffixes("Test", "IT", "Tests");
+
+        assertTrue(filter.accept("FooTest"));
+        assertTrue(filter.accept("FooTests"));
+        assertTrue(filter.accept("IT"));
+
+        assertFalse(filter.accept("FooTestCase"));
+        assertFalse(filter.accept("T"));
+    }
+
+    public void testCompiledPatterns() throws Exception {
+        Filter filter = Filters.patterns("org\\.foo\\..*", ".*\\.Blue", ".*Green.*", "net\\.Red", "com\\.[a-z]+\\.Orange");
+
+        assertTrue(filter.accept("org.foo.Red"));
+        assertTrue(filter.accept("org.bar.Blue"));
+        assertTrue(filter.accept("org.GreenApple"));
+        assertTrue(filter.accept("net.Red"));
+        assertTrue(filter.accept("com.acme.Orange"));
+
+        assertFalse(filter.accept("org.fooo.Red"));
+        assertFalse(filter.accept("org.bar.Bluee"));
+        assertFalse(filter.accept("net.Redd"));
+        assertFalse(filter.accept("com.ACME.Orange"));
+
+        // .* does not match line terminators
+        assertFalse(filter.accept("org.foo.\nRed"));
+    }
+
+    public void testOptimizedIncludeExclude() throws Exception {
+        Filter filter = Filters.optimize(new IncludeExcludeFilter(Filters.packages("org.foo", "org.bar"), Filters.packages("org.foo.util")));
+
+        assertTrue(filter instanceof CompiledFilter);
+        assertTrue(((CompiledFilter) filter).isPackageFilter());
+        assertTrue(filter.accept("org.foo.Red"));
+        assertTrue(filter.accept("org.bar.Red"));
+
+        assertFalse(filter.accept("com.bar.Red"));
+        assertFalse(filter.accept("org.foo.util.Blue"));
+    }
+
+    public void testOptimizedExcludeInclude() throws Exception {
+        Filter filter = Filters.optimize(new ExcludeIncludeFilter(Filters.packages("org.foo.util"), Filters.packages("org.foo", "org.bar")));
+
+        assertTrue(filter instanceof CompiledFilter);
+        assertFalse(filter.accept("org.foo.Red"));
+        assertFalse(filter.accept("org.bar.Red"));
+
+        assertTrue(filter.accept("com.bar.Red"));
+        assertTrue(filter.accept("org.foo.util.Blue"));
+    }
+
+    public void testSameAsUncompiled() throws Exception {
+        final Random random = new Random(42);
+        final String alphabet = "ab.c";
+
+        for (int round = 0; round < 200; round++) {
+            final List<Filter> include = new ArrayList<Filter>();
+            final List<Filter> exclude = new ArrayList<Filter>();
+            for (int i = 0; i < 8; i++) {
+                final String text = random(random, alphabet, 3);
+                final Filter filter;
+                switch (random.nextInt(7)) {
+                    case 0: filter = new PackageFilter(text); break;
+                    case 1: filter = new PrefixFilter(text); break;
+                    case 2: filter = new ClassFilter(text); break;
+                    case 3: filter = new SuffixFilter(text); break;
+                    case 4: filter = new ContainsFilter(text); break;
+                    case 5: filter = new PatternFilter(".*" + text.replace(".", "\\.")); break;
+                    default: filter = new PatternFilter("[ab]" + text.replace(".", "\\.") + ".*"); break;
+                }
+                (random.nextBoolean() ? include : exclude).add(filter);
+            }
+
+            final Filter[] filters = {
+                    new FilterList(include),
+                    new IncludeExcludeFilter(new FilterList(include), new FilterList(exclude)),
+                    new ExcludeIncludeFilter(new FilterList(include), new FilterList(exclude))
+            };
+
+            for (Filter filter : filters) {
+                final Filter compiled = Filters.optimize(filter);
+                for (int i = 0; i < 50; i++) {
+                    final String name = random(random, alphabet, 6);
+                    assertEquals(filter + " " + name, filter.accept(name), compiled.accept(name));
+                }
+            }
+        }
+    }
+
+    private static String random(Random random, String alphabet, int max) {
+        final StringBuilder sb = new StringBuilder();
+        final int length = random.nextInt(max + 1);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
 }
@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class GenericImplementationsTest {
+
+    private AnnotationFinder finder;
+
+    @Before
+    public void setUp() throws Exception {
+        finder = new AnnotationFinder(new ClassesArchive(
+                Converter.class, AbstractConverter.class, FooConverter.class, BarConverter.class,
+                InheritedFooConverter.class, SubFooConverter.class, ListConverter.class, RawConverter.class,
+                Bounded.class, BoundedFooConverter.class,
+                Repository.class, UserRepository.class, Users.class), false);
+    }
+
+    @Test
+    public void testTypeArgument() throws Exception {
+        assertEquals(set(FooConverter.class, InheritedFooConverter.class, SubFooConverter.class, BoundedFooConverter.class),
+                set(finder.findImplementations(Converter.class, Foo.class)));
+        assertEquals(set(BarConverter.class), set(finder.findImplementations(Converter.class, Bar.class)));
+        assertTrue(finder.findImplementations(Converter.class, String.class).isEmpty());
+    }
+
+    @Test
+    public void testParameterizedArgument() throws Exception {
+        final Type listOfStrings = Holder.class.getDeclaredField("strings").getGenericType();
+        final Type listOfIntegers = Holder.class.getDeclaredField("integers").getGenericType();
+
+        assertEquals(set(ListConverter.class), set(finder.findImplementations(Converter.class, List.class)));
+        assertEquals(set(ListConverter.class), set(finder.findImplementations(Converter.class, listOfStrings)));
+        assertTrue(finder.findImplementations(Converter.class, listOfIntegers).isEmpty());
+    }
+
+    @Test
+    public void testSeveralArguments() throws Exception {
+        assertEquals(set(UserRepository.class, Users.class), set(finder.findImplementations(Repository.class, Foo.class, Long.class)));
+        assertTrue(finder.findImplementations(Repository.class, Foo.class, String.class).isEmpty());
+
+        // a class as raw type
+        assertEquals(set(Users.class), set(finder.findImplementations(UserRepository.class, new Type[0])));
+    }
+
+    @Test
+    public void testAnyArgument() throws Exception {
+        final Type wildcard = ((java.lang.reflect.ParameterizedType) Holder.class.getDeclaredField("any").getGenericType()).getActualTypeArguments()[0];
+
+        final Set<Class<?>> any = set(finder.findImplementations(Converter.class, wildcard));
+        assertTrue(any.contains(AbstractConverter.class));
+        assertTrue(any.contains(ListConverter.class));
+        assertTrue(!any.contains(RawConverter.class));
+
+        // no arguments, every implementation but not the interfaces
+        final Set<Class<?>> all = set(finder.findImplementations(Converter.class, new Type[0]));
+        assertTrue(all.contains(RawConverter.class));
+        assertEquals(9, all.size());
+    }
+
+    @Test
+    public void testSignature() throws Exception {
+        assertNull(finder.classInfos.get(SubFooConverter.class.getName()).getSignature());
+        assertEquals("Ljava/lang/Object;L" + Converter.class.getName().replace('.', '/') + "<L" + Foo.class.getName().replace('.', '/') + ";>;",
+                finder.classInfos.get(FooConverter.class.getName()).getSignature());
+    }
+
+    private static Set<Class<?>> set(List<? extends Class<?>> classes) {
+        final Set<Class<?>> set = new HashSet<Class<?>>(classes);
+        assertEquals("duplicates in " + classes, classes.size(), set.size());
+        return set;
+    }
+
+    private static Set<Class<?>> set(Class<?>... classes) {
+        return new HashSet<Class<?>>(Arrays.asList(classes));
+    }
+
+    public static class Foo {
+    }
+
+    public static class Bar {
+    }
+
+    public static interface Converter<T> {
+    }
+
+    public static abstract class AbstractConverter<T> implements Converter<T> {
+    }
+
+    public static class FooConverter implements Converter<Foo> {
+    }
+
+    public static class BarConverter implements Converter<Bar> {
+    }
+
+    public static class InheritedFooConverter extends AbstractConverter<Foo> {
+    }
+
+    public static class SubFooConverter extends FooConverter {
+    }
+
+    public static class ListConverter implements Converter<List<String>> {
+    }
+
+    public static class RawConverter implements Converter {
+    }
+
+    public static class Bounded<N extends Number & Comparable<N>, T> implements Converter<T> {
+    }
+
+    public static class BoundedFooConverter extends Bounded<Integer, Foo> {
+    }
+
+    public static interface Repository<E, ID> {
+    }
+
+    public static class UserRepository implements Repository<Foo, Long> {
+    }
+
+    public static class Users extends UserRepository {
+    }
+
+    public static class Holder {
+        public List<String> strings = new ArrayList<String>();
+        public List<Integer> integers = Collections.emptyList();
+        public List<?> any;
+    }
+}
@@ -23,6 +23,9 @@ import java.lang.annotation.Annotation;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,6 +45,61 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
  */
 public class MetaAnnotatedClassTest extends TestCase {
 
+    public void testCached() throws Exception {
+        MetaAnnotatedClass<Triangle> first = new MetaAnnotatedClass<Triangle>(Triangle.class);
+        final int computed = MetaAnnotatedElement.computed();
+
+        // the unrolled meta-annotations are computed once per class
+        MetaAnnotatedClass<Triangle> second = new MetaAnnotatedClass<Triangle>(Triangle.class);
+        assertEquals(computed, MetaAnnotatedElement.computed());
+        assertEquals(first.getMetaAnnotations().size(), second.getMetaAnnotations().size());
+        assertEquals("red", second.getAnnotation(Color.class).value());
+
+        // each instance gets its own meta annotations
+        final MetaAnnotation<?> red = metaAnnotation(first, Red.class);
+        ((List) red.getConflicts()).add(red);
+        assertEquals(0, metaAnnotation(second, Red.class).getConflicts().size());
+        assertEquals(0, metaAnnotation(new MetaAnnotatedClass<Triangle>(Triangle.class), Red.class).getConflicts().size());
+        assertEquals(computed, MetaAnnotatedElement.computed());
+
+        assertEquals(1, red.getConflicts().size());
+    }
+
+    public void testClassLoaderNotRetained() throws Exception {
+        final URL location = MetaAnnotatedClassTest.class.getProtectionDomain().getCodeSource().getLocation();
+        ClassLoader loader = new URLClassLoader(new URL[]{location}, MetaAnnotatedClassTest.class.getClassLoader()) {
+            @Override
+            protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (!name.startsWith(MetaAnnotatedClassTest.class.getName())) return super.loadClass(name, resolve);
+
+                Class<?> clazz = findLoadedClass(name);
+                if (clazz == null) clazz = findClass(name);
+                return clazz;
+            }
+        };
+
+        Class<?> triangle = loader.loadClass(Triangle.class.getName());
+        assertNotSame(Triangle.class, triangle);
+        assertEquals(3, new MetaAnnotatedClass(triangle).getAnnotations().length);
+
+        final WeakReference<ClassLoader> reference = new WeakReference<ClassLoader>(loader);
+        loader = null;
+        triangle = null;
+
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(reference.get());
+    }
+
+    private static MetaAnnotation<?> metaAnnotation(MetaAnnotatedClass<?> clazz, Class<? extends Annotation> type) {
+        for (MetaAnnotation<?> metaAnnotation : clazz.getMetaAnnotations()) {
+            if (metaAnnotation.get().annotationType().equals(type)) return metaAnnotation;
+        }
+        throw new AssertionError(type.getName());
+    }
+
     public void test() throws Exception {
         AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(Square.class, Circle.class, Triangle.class, Fake.class, Store.class, Farm.class, None.class)).link();
 
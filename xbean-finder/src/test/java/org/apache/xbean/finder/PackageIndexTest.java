@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.One;
+import org.acme.Three;
+import org.acme.Two;
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.ParamA;
+import org.acme.foo.Blue;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class PackageIndexTest {
+
+    private AnnotationFinder finder;
+
+    @Before
+    public void setUp() throws Exception {
+        finder = new AnnotationFinder(new ClassesArchive(
+                One.class, Two.class, Three.class,
+                FullyAnnotated.class, ParamA.class,
+                Blue.class, Blue.Navy.class, Green.class, Red.class), false);
+    }
+
+    @Test
+    public void testPackage() throws Exception {
+        assertEquals(set(One.class, Two.class, Three.class), set(finder.findClassesInPackage("org.acme", false)));
+        assertEquals(set(Blue.class, Blue.Navy.class, Green.class, Red.class), set(finder.findClassesInPackage("org.acme.foo", false)));
+        assertTrue(finder.findClassesInPackage("org", false).isEmpty());
+        assertTrue(finder.findClassesInPackage("org.unknown", false).isEmpty());
+    }
+
+    @Test
+    public void testRecursive() throws Exception {
+        assertEquals(9, finder.findClassesInPackage("org.acme", true).size());
+        assertEquals(9, finder.findClassesInPackage("org", true).size());
+        assertEquals(set(FullyAnnotated.class, ParamA.class), set(finder.findClassesInPackage("org.acme.bar", true)));
+
+        // a package is not the prefix of its siblings
+        assertTrue(finder.findClassesInPackage("org.ac", true).isEmpty());
+    }
+
+    @Test
+    public void testSubpackages() throws Exception {
+        final PackageIndex packages = finder.packages();
+
+        assertEquals(9, packages.size());
+        assertEquals(Collections.singleton("org"), packages.getSubpackages(""));
+        assertEquals(Collections.singleton("org.acme"), packages.getSubpackages("org"));
+        assertEquals(new HashSet<String>(Arrays.asList("org.acme.bar", "org.acme.foo")), packages.getSubpackages("org.acme"));
+        assertTrue(packages.getSubpackages("org.acme.foo").isEmpty());
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        finder.update(Collections.<String>emptyList(), Arrays.asList(FullyAnnotated.class.getName(), ParamA.class.getName()));
+
+        final PackageIndex packages = finder.packages();
+        assertEquals(7, packages.size());
+        assertFalse(packages.containsPackage("org.acme.bar"));
+        assertEquals(Collections.singleton("org.acme.foo"), packages.getSubpackages("org.acme"));
+
+        finder.update(Arrays.asList(ParamA.class.getName()), Collections.<String>emptyList());
+        assertEquals(set(ParamA.class), set(finder.findClassesInPackage("org.acme.bar", false)));
+    }
+
+    private static Set<Class<?>> set(List<Class<?>> classes) {
+        return new HashSet<Class<?>>(classes);
+    }
+
+    private static Set<Class<?>> set(Class<?>... classes) {
+        return new HashSet<Class<?>>(Arrays.asList(classes));
+    }
+}
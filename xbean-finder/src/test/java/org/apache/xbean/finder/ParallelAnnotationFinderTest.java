@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.bar.Construct;
+import org.acme.bar.Field;
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.Method;
+import org.acme.bar.ParamA;
+import org.acme.bar.ParamB;
+import org.acme.bar.Type;
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ParallelAnnotationFinderTest {
+
+    private static final Class[] classes = {
+            Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Green.Emerald.class,
+            Red.class, Red.CandyApple.class, Red.Pink.class, FullyAnnotated.class
+    };
+
+    private ExecutorService executor;
+    private JarArchive archive;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+
+        final File jar = Archives.jarArchive(classes);
+        final URL url = jar.toURI().toURL();
+        archive = new JarArchive(new URLClassLoader(new URL[]{url}, getClass().getClassLoader()), url);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSameIndexAsSerialScan() throws Exception {
+        final AnnotationFinder serial = new AnnotationFinder(archive, false);
+        final AnnotationFinder parallel = new AnnotationFinder(archive, false, executor);
+
+        assertEquals(serial.classInfos.keySet(), parallel.classInfos.keySet());
+        assertEquals(serial.getAnnotatedClassNames().size(), parallel.getAnnotatedClassNames().size());
+        assertEquals(serial.annotated.keySet(), parallel.annotated.keySet());
+
+        for (Map.Entry<String, List<AnnotationFinder.Info>> entry : serial.annotated.entrySet()) {
+            assertEquals(entry.getKey(), names(entry.getValue()), names(parallel.annotated.get(entry.getKey())));
+        }
+    }
+
+    @Test
+    public void testManyBatches() throws Exception {
+        // the compiled test classes, several batches of 64 classes for each thread
+        final File classes = new File(getClass().getProtectionDomain().getCodeSource().getLocation().toURI());
+        final FileArchive archive = new FileArchive(getClass().getClassLoader(), classes);
+
+        int entries = 0;
+        for (Archive.Entry entry : archive) {
+            entries++;
+        }
+        assertTrue(entries > 2 * 64);
+
+        final AnnotationFinder serial = new AnnotationFinder(archive, false);
+        final AnnotationFinder parallel = new AnnotationFinder(archive, false, executor);
+
+        assertEquals(serial.getAnnotatedClassNames(), parallel.getAnnotatedClassNames());
+        assertEquals(serial.annotated.keySet(), parallel.annotated.keySet());
+        for (Map.Entry<String, List<AnnotationFinder.Info>> entry : serial.annotated.entrySet()) {
+            // in the same order, the batches are merged in archive order
+            assertEquals(entry.getKey(), names(entry.getValue()), names(parallel.annotated.get(entry.getKey())));
+        }
+        assertEquals(names(serial.findAnnotatedClasses(Color.class)), names(parallel.findAnnotatedClasses(Color.class)));
+    }
+
+    @Test
+    public void testFind() throws Exception {
+        final AnnotationFinder finder = new AnnotationFinder(archive, false, executor).link();
+
+        assertEquals(8, finder.findAnnotatedClasses(Color.class).size());
+        assertEquals(1, finder.findAnnotatedClasses(Type.class).size());
+        assertEquals(1, finder.findAnnotatedConstructors(Construct.class).size());
+        assertEquals(7, finder.findAnnotatedFields(Field.class).size());
+        assertTrue(finder.findAnnotatedMethods(Method.class).size() > 0);
+        assertEquals(1, finder.findAnnotatedConstructorParameters(ParamA.class).size());
+        assertEquals(1, finder.findAnnotatedConstructorParameters(ParamB.class).size());
+        assertEquals(1, finder.findAnnotatedMethodParameters(ParamB.class).size());
+    }
+
+    private static List<String> names(Collection<? extends Class<?>> classes) {
+        final List<String> names = new ArrayList<String>();
+        for (Class<?> clazz : classes) {
+            names.add(clazz.getName());
+        }
+        return names;
+    }
+
+    private static List<String> names(List<AnnotationFinder.Info> infos) {
+        final List<String> names = new ArrayList<String>();
+        for (AnnotationFinder.Info info : infos) {
+            names.add(info.toString());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.bar.Field;
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.Type;
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.apache.xbean.finder.util.ConstantPool;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class PrefilterAnnotationFinderTest {
+
+    private static final Class[] classes = {
+            Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Green.Emerald.class,
+            Red.class, Red.CandyApple.class, Red.Pink.class, FullyAnnotated.class
+    };
+
+    @Test
+    public void testOnlyGivenAnnotationsAreIndexed() throws Exception {
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(classes), false, null, null, Arrays.asList(Color.class.getName())).link();
+
+        assertEquals(8, finder.findAnnotatedClasses(Color.class).size());
+        assertEquals(0, finder.findAnnotatedClasses(Type.class).size());
+        assertEquals(0, finder.findAnnotatedFields(Field.class).size());
+
+        // the skipped classes are still part of the hierarchy
+        final AnnotationFinder.ClassInfo fullyAnnotated = finder.classInfos.get(FullyAnnotated.class.getName());
+        assertTrue(fullyAnnotated.getAnnotations().isEmpty());
+        assertTrue(fullyAnnotated.getMethods().isEmpty());
+        assertEquals(1, finder.findSubclasses(Green.class).size());
+
+        // and keep their generic signature
+        final AnnotationFinder all = new AnnotationFinder(new ClassesArchive(classes), false);
+        assertNotNull(fullyAnnotated.getSignature());
+        assertEquals(all.classInfos.get(FullyAnnotated.class.getName()).getSignature(), fullyAnnotated.getSignature());
+    }
+
+    @Test
+    public void testSameResultsForGivenAnnotations() throws Exception {
+        final AnnotationFinder all = new AnnotationFinder(new ClassesArchive(classes), false);
+        final AnnotationFinder filtered = new AnnotationFinder(new ClassesArchive(classes), false, null, null, Arrays.asList(Type.class.getName(), Field.class.getName()));
+
+        assertEquals(all.findAnnotatedClasses(Type.class), filtered.findAnnotatedClasses(Type.class));
+        assertEquals(all.findAnnotatedFields(Field.class), filtered.findAnnotatedFields(Field.class));
+        assertEquals(all.classInfos.keySet(), filtered.classInfos.keySet());
+    }
+
+    @Test
+    public void testConstantPool() throws Exception {
+        final byte[] red = bytecode(Red.class);
+
+        assertTrue(new ConstantPool(Arrays.asList("Lorg/acme/foo/Color;")).containsAny(red));
+        assertFalse(new ConstantPool(Arrays.asList("Lorg/acme/bar/Type;")).containsAny(red));
+        assertFalse(new ConstantPool(Collections.<String>emptyList()).containsAny(red));
+    }
+
+    private static byte[] bytecode(Class<?> clazz) throws Exception {
+        final InputStream in = clazz.getClassLoader().getResourceAsStream(clazz.getName().replace('.', '/') + ".class");
+        try {
+            final byte[] bytes = new byte[in.available()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                offset += in.read(bytes, offset, bytes.length - offset);
+            }
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.xbean.finder;
  */
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.JarURLConnection;
 import java.net.URL;
@@ -30,6 +31,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -374,6 +377,81 @@ public class ResourceFinderTest extends TestCase {
         assertNotNull(beansXmlUrl);
     }
 
+    public void testIndexed() throws Exception {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("META-INF/", "");
+        map.put("META-INF/services/", "");
+        map.put("META-INF/services/java.lang.Runnable", One.class.getName());
+        map.put("META-INF/services/java.io.Serializable", Two.class.getName());
+        map.put("META-INF/services/nested/", "");
+        map.put("META-INF/services/nested/ignored", Three.class.getName());
+        map.put("WEB-INF/beans.xml", "<beans/>");
+
+        final URL jarFileUrl = Archives.jarArchive(map).toURI().toURL();
+        final ResourceFinder plain = new ResourceFinder("META-INF/", jarFileUrl);
+        final ResourceFinder indexed = new ResourceFinder("META-INF/", jarFileUrl).enableIndex();
+
+        final Map<String, String> services = indexed.mapAllStrings("services");
+        assertEquals(2, services.size());
+        assertEquals(One.class.getName(), services.get("java.lang.Runnable"));
+        assertEquals(plain.mapAllStrings("services"), services);
+
+        assertEquals(plain.getResourcesMap("services/nested").keySet(), indexed.getResourcesMap("services/nested").keySet());
+        assertEquals(plain.find("services/java.io.Serializable"), indexed.find("services/java.io.Serializable"));
+        assertEquals(Two.class.getName(), indexed.findString("services/java.io.Serializable"));
+        assertEquals(1, indexed.findAll("services/nested").size());
+        assertTrue(indexed.findAll("services/java.util.List").isEmpty());
+        assertNotNull(new ResourceFinder(jarFileUrl).enableIndex().find("WEB-INF/beans.xml"));
+
+        // resources found through the class loader
+        assertEquals(resourceFinder.mapAllStrings("serializables"), new ResourceFinder("META-INF/").enableIndex().mapAllStrings("serializables"));
+    }
+
+    public void testParallelReads() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final ResourceFinder parallel = new ResourceFinder("META-INF/").enableParallelReads(executor);
+
+            assertEquals(resourceFinder.mapAllStrings("serializables"), parallel.mapAllStrings("serializables"));
+            assertEquals(resourceFinder.mapAvailableProperties("tvshows"), parallel.mapAvailableProperties("tvshows"));
+            assertEquals(resourceFinder.findAvailableStrings("MANIFEST.MF"), parallel.findAvailableStrings("MANIFEST.MF"));
+            assertEquals(resourceFinder.mapAvailableImplementations(java.io.Serializable.class), parallel.mapAvailableImplementations(java.io.Serializable.class));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testContentCache() throws Exception {
+        final File dir = File.createTempFile("resources", "dir");
+        assertTrue(dir.delete());
+        final File file = new File(dir, "META-INF/cached");
+        assertTrue(file.getParentFile().mkdirs());
+
+        write(file, "before");
+        final long lastModified = file.lastModified();
+
+        final ResourceFinder finder = new ResourceFinder("META-INF/", dir.toURI().toURL()).enableContentCache();
+        assertEquals("before", finder.findString("cached"));
+
+        // same last modified time, the cached content is used
+        write(file, "after");
+        assertTrue(file.setLastModified(lastModified));
+        assertEquals("before", finder.findString("cached"));
+
+        assertTrue(file.setLastModified(lastModified + 2000));
+        assertEquals("after", finder.findString("cached"));
+        assertEquals("after", new ResourceFinder("META-INF/", dir.toURI().toURL()).findString("cached"));
+    }
+
+    private static void write(File file, String content) throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
 
     private static void readJarEntries(URL location, String basePath, Map<String, URL> resources) throws IOException {
         JarURLConnection conn = (JarURLConnection) location.openConnection();
@@ -0,0 +1,233 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.apache.xbean.finder.archive.CompositeArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ScanStatisticsTest {
+
+    private static final Class[] classes = {Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Red.class};
+
+    @Test
+    public void testPerArchive() throws Exception {
+        final JarArchive jar = jar();
+        final ClassesArchive green = new ClassesArchive(Green.Emerald.class);
+        final Recorder recorder = new Recorder();
+
+        final AnnotationFinder finder = new AnnotationFinder(new CompositeArchive(jar, green), false, null, null, null, recorder);
+
+        assertEquals(2, recorder.scanned.size());
+        assertEquals(recorder.scanned, finder.getStatistics());
+
+        final ScanStatistics first = recorder.scanned.get(0);
+        assertSame(jar, first.getArchive());
+        assertEquals(jar.getUrl().toExternalForm(), first.getName());
+        assertEquals(classes.length, first.getEntries());
+        assertEquals(classes.length, first.getClasses());
+        assertTrue(first.getBytes() > 0);
+        assertTrue(first.getInfos() > first.getClasses());
+        assertTrue(first.getParseNanos() > 0);
+        assertEquals(0, first.getFailureCount());
+
+        final ScanStatistics second = recorder.scanned.get(1);
+        assertSame(green, second.getArchive());
+        assertEquals(1, second.getClasses());
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Recorder recorder = new Recorder();
+            new AnnotationFinder(jar(), false, executor, null, null, recorder);
+
+            assertEquals(1, recorder.scanned.size());
+            assertEquals(classes.length, recorder.scanned.get(0).getClasses());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLink() throws Exception {
+        final Recorder recorder = new Recorder();
+        final AnnotationFinder finder = new AnnotationFinder(new ClassesArchive(Blue.Navy.class), false, null, null, null, recorder);
+        finder.link();
+
+        final ScanStatistics linked = finder.getLinkStatistics();
+        assertEquals(3, recorder.linked.size());
+        assertSame(linked, recorder.linked.get(2));
+
+        // the Blue parent and the Color interfaces are read while linking, Object is not
+        assertTrue(linked.getFaultIns() > 0);
+        assertTrue(linked.getJvmSkipped() > 0);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        final Recorder recorder = new Recorder();
+        final Archive broken = new Broken(new ClassesArchive(Red.class, Green.class), Green.class.getName());
+
+        final AnnotationFinder finder = new AnnotationFinder(broken, false, null, null, null, recorder);
+
+        final ScanStatistics statistics = finder.getStatistics().get(0);
+        assertEquals(2, statistics.getEntries());
+        assertEquals(1, statistics.getClasses());
+        assertEquals(1, statistics.getFailureCount());
+        assertTrue(statistics.getFailures().get(Green.class.getName()) instanceof IOException);
+        assertEquals(Green.class.getName(), recorder.failed.get(0));
+    }
+
+    @Test
+    public void testNoListener() throws Exception {
+        final AnnotationFinder finder = new AnnotationFinder(jar(), false);
+
+        assertTrue(finder.getStatistics().isEmpty());
+        assertNull(finder.getLinkStatistics());
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        final JmxScanListener listener = new JmxScanListener();
+        final JarArchive jar = jar();
+        new AnnotationFinder(jar, false, null, null, null, listener).link();
+
+        final ObjectName name = name(listener, jar);
+        try {
+            assertEquals((long) classes.length, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Classes"));
+        } finally {
+            listener.unregister();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    @Test
+    public void testJmxSeveralFinders() throws Exception {
+        final JarArchive jar = jar();
+        final JmxScanListener first = new JmxScanListener();
+        final JmxScanListener second = new JmxScanListener();
+        try {
+            new AnnotationFinder(jar, false, null, null, null, first);
+            new AnnotationFinder(jar, false, null, null, null, second);
+            new AnnotationFinder(jar, false, null, null, null, second);
+
+            // the same archive scanned by another finder leaves the first MBean alone
+            second.unregister();
+            assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name(first, jar)));
+            assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name(second, jar)));
+        } finally {
+            first.unregister();
+            second.unregister();
+        }
+    }
+
+    private static ObjectName name(JmxScanListener listener, JarArchive jar) throws Exception {
+        return new ObjectName(JmxScanListener.DOMAIN + ":type=ScanStatistics,finder=" + ObjectName.quote(listener.getFinder()) + ",name=" + ObjectName.quote(jar.getUrl().toExternalForm()));
+    }
+
+    private JarArchive jar() throws Exception {
+        final File file = Archives.jarArchive(classes);
+        final URL url = file.toURI().toURL();
+        return new JarArchive(new URLClassLoader(new URL[]{url}, getClass().getClassLoader()), url);
+    }
+
+    private static class Recorder implements ScanListener {
+        private final List<ScanStatistics> scanned = new ArrayList<ScanStatistics>();
+        private final List<ScanStatistics> linked = new ArrayList<ScanStatistics>();
+        private final List<String> failed = new ArrayList<String>();
+
+        public void scanned(ScanStatistics statistics) {
+            scanned.add(statistics);
+        }
+
+        public void linked(ScanStatistics statistics) {
+            linked.add(statistics);
+        }
+
+        public synchronized void failed(Archive archive, String className, Throwable cause) {
+            failed.add(className);
+        }
+    }
+
+    /**
+     * Fails to read the bytecode of one class
+     */
+    private static class Broken implements Archive {
+        private final Archive archive;
+        private final String className;
+
+        private Broken(Archive archive, String className) {
+            this.archive = archive;
+            this.className = className;
+        }
+
+        public InputStream getBytecode(String name) throws IOException, ClassNotFoundException {
+            return archive.getBytecode(name);
+        }
+
+        public Class<?> loadClass(String name) throws ClassNotFoundException {
+            return archive.loadClass(name);
+        }
+
+        public Iterator<Entry> iterator() {
+            final List<Entry> entries = new ArrayList<Entry>();
+            for (final Entry entry : archive) {
+                entries.add(new Entry() {
+                    public String getName() {
+                        return entry.getName();
+                    }
+
+                    public InputStream getBytecode() throws IOException {
+                        if (className.equals(entry.getName())) throw new IOException("broken " + className);
+                        return entry.getBytecode();
+                    }
+                });
+            }
+            return entries.iterator();
+        }
+    }
+}
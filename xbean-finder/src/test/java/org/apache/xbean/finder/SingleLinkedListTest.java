@@ -165,4 +165,22 @@ public class SingleLinkedListTest extends TestCase {
         assertEquals(0, temp.size());
     }
 
+    public void testRemove() {
+        assertTrue(list.remove("five"));
+        assertTrue(list.remove("three"));
+        assertTrue(list.remove("one"));
+        assertFalse(list.remove("foo"));
+
+        assertEquals(Arrays.asList("four", "two"), new ArrayList<String>(list));
+        assertEquals(2, list.size());
+    }
+
+    public void testRemoveAll() {
+        assertTrue(list.removeAll(Arrays.asList("one", "two", "four")));
+        assertFalse(list.removeAll(Arrays.asList("one", "foo")));
+
+        assertEquals(Arrays.asList("five", "three"), new ArrayList<String>(list));
+        assertEquals(2, list.size());
+    }
+
 }
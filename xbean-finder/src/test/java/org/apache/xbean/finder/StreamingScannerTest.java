@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.bar.Construct;
+import org.acme.bar.Field;
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.ParamA;
+import org.acme.bar.Type;
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Primary;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ClassesArchive;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.ElementType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class StreamingScannerTest {
+
+    private final Archive archive = new ClassesArchive(Blue.class, Blue.Navy.class, Green.class, Red.class, FullyAnnotated.class);
+
+    @Test
+    public void testAnnotatedTypes() throws Exception {
+        final Recorder recorder = new Recorder();
+        new StreamingScanner(archive).annotatedWith(Color.class.getName()).scan(recorder);
+
+        assertEquals(Arrays.asList(
+                "TYPE " + Blue.class.getName() + " " + Color.class.getName(),
+                "TYPE " + Blue.Navy.class.getName() + " " + Color.class.getName(),
+                "TYPE " + Green.class.getName() + " " + Color.class.getName(),
+                "TYPE " + Red.class.getName() + " " + Color.class.getName()), recorder.found);
+    }
+
+    @Test
+    public void testAnnotatedMembers() throws Exception {
+        final Recorder recorder = new Recorder();
+        new StreamingScanner(archive).annotatedWith(Type.class.getName(), Field.class.getName(), Construct.class.getName(), ParamA.class.getName()).scan(recorder);
+
+        final String name = FullyAnnotated.class.getName();
+        assertEquals("TYPE " + name + " " + Type.class.getName(), recorder.found.get(0));
+        assertEquals(7, count(recorder.found, "FIELD " + name + "."));
+        assertTrue(recorder.found.contains("CONSTRUCTOR " + name + ".<init>(Ljava/lang/String;I)V " + Construct.class.getName()));
+        assertTrue(recorder.found.contains("PARAMETER " + name + ".<init>(Ljava/lang/String;I)V " + ParamA.class.getName()));
+        assertEquals(0, count(recorder.found, "METHOD"));
+    }
+
+    @Test
+    public void testExtending() throws Exception {
+        final Recorder recorder = new Recorder();
+        new StreamingScanner(archive).extending(Primary.class.getName()).scan(recorder);
+
+        assertEquals(Arrays.asList(
+                "EXTENDS " + Blue.class.getName() + " " + Primary.class.getName(),
+                "EXTENDS " + Green.class.getName() + " " + Primary.class.getName(),
+                "EXTENDS " + Red.class.getName() + " " + Primary.class.getName()), recorder.found);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        final Archive broken = new Archive() {
+            public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+                throw new ClassNotFoundException(className);
+            }
+
+            public Class<?> loadClass(String className) throws ClassNotFoundException {
+                throw new ClassNotFoundException(className);
+            }
+
+            public Iterator<Entry> iterator() {
+                final List<Entry> entries = new ArrayList<Entry>();
+                entries.add(new Entry() {
+                    public String getName() {
+                        return "org.acme.Broken";
+                    }
+
+                    public InputStream getBytecode() throws IOException {
+                        return new ByteArrayInputStream(new byte[]{(byte) 0xCA, (byte) 0xFE});
+                    }
+                });
+                for (Entry entry : archive) {
+                    entries.add(entry);
+                }
+                return entries.iterator();
+            }
+        };
+
+        final Recorder recorder = new Recorder();
+        new StreamingScanner(broken).annotatedWith(Color.class.getName()).scan(recorder);
+
+        assertEquals(4, recorder.found.size());
+        assertEquals(Arrays.asList("org.acme.Broken"), recorder.failed);
+    }
+
+    private static int count(List<String> found, String prefix) {
+        int count = 0;
+        for (String string : found) {
+            if (string.startsWith(prefix)) count++;
+        }
+        return count;
+    }
+
+    private static class Recorder implements StreamingScanner.Callback {
+        private final List<String> found = new ArrayList<String>();
+        private final List<String> failed = new ArrayList<String>();
+
+        public void annotated(String className, String annotation, ElementType kind, String member) {
+            found.add(kind + " " + className + (member == null ? "" : "." + member) + " " + annotation);
+        }
+
+        public void extended(String className, String type) {
+            found.add("EXTENDS " + className + " " + type);
+        }
+
+        public void failed(String className, Exception cause) {
+            failed.add(className);
+        }
+    }
+}
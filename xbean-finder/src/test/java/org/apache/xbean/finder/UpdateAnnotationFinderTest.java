@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder;
+
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.ParamA;
+import org.acme.bar.ParamB;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Primary;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.FileArchive;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class UpdateAnnotationFinderTest {
+
+    private File dir;
+    private URLClassLoader loader;
+    private AnnotationFinder finder;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Archives.fileArchive(new Class[]{Color.class, Primary.class, Red.class, Red.CandyApple.class, Green.class, Green.Emerald.class});
+        loader = new URLClassLoader(new URL[]{dir.toURI().toURL()}, null);
+        finder = new AnnotationFinder(new FileArchive(loader, dir), false).link();
+    }
+
+    @Test
+    public void testAdded() throws Exception {
+        assertFalse(finder.getAnnotatedClassNames().contains(Red.Pink.class.getName()));
+
+        copy(Red.Pink.class);
+        finder.update(Arrays.asList(Red.Pink.class.getName()), Collections.<String>emptyList());
+
+        assertTrue(finder.getAnnotatedClassNames().contains(Red.Pink.class.getName()));
+        assertTrue(finder.originalInfos.containsKey(Red.Pink.class.getName()));
+        assertEquals(5, names(Color.class).size());
+    }
+
+    @Test
+    public void testRemoved() throws Exception {
+        final Class<?> green = loader.loadClass(Green.class.getName());
+        assertEquals(1, finder.findSubclasses(green).size());
+
+        assertTrue(new File(dir, Green.Emerald.class.getName().replace('.', '/') + ".class").delete());
+        finder.update(Collections.<String>emptyList(), Arrays.asList(Green.Emerald.class.getName()));
+
+        assertEquals(0, finder.findSubclasses(green).size());
+        assertFalse(finder.classInfos.containsKey(Green.Emerald.class.getName()));
+        assertFalse(names(Color.class).contains(Green.Emerald.class.getName()));
+        assertEquals(3, names(Color.class).size());
+    }
+
+    @Test
+    public void testChanged() throws Exception {
+        final AnnotationFinder.ClassInfo before = finder.classInfos.get(Green.class.getName());
+
+        finder.update(Arrays.asList(Green.class.getName()), Collections.<String>emptyList());
+
+        final AnnotationFinder.ClassInfo after = finder.classInfos.get(Green.class.getName());
+        assertTrue(before != after);
+        assertTrue(after == finder.originalInfos.get(Green.class.getName()));
+
+        // the subclass is linked to the new info and nothing is indexed twice
+        final Class<?> green = loader.loadClass(Green.class.getName());
+        assertEquals(1, finder.findSubclasses(green).size());
+        assertEquals(4, names(Color.class).size());
+        assertEquals(1, finder.annotated.get("org.acme.foo.Property").size());
+    }
+
+    @Test
+    public void testChangedParameters() throws Exception {
+        final File dir = Archives.fileArchive(new Class[]{FullyAnnotated.class});
+        final URLClassLoader loader = new URLClassLoader(new URL[]{dir.toURI().toURL()}, null);
+        final AnnotationFinder finder = new AnnotationFinder(new FileArchive(loader, dir), false).link();
+        assertEquals(2, finder.annotated.get(ParamB.class.getName()).size());
+
+        finder.update(Arrays.asList(FullyAnnotated.class.getName()), Collections.<String>emptyList());
+
+        // the parameters of the old constructor and setter are gone
+        assertEquals(2, finder.annotated.get(ParamB.class.getName()).size());
+        assertEquals(2, finder.annotated.get(ParamA.class.getName()).size());
+    }
+
+    private List<String> names(Class<?> annotation) {
+        final List<String> names = new ArrayList<String>();
+        for (AnnotationFinder.Info info : finder.annotated.get(annotation.getName())) {
+            names.add(info.getName());
+        }
+        return names;
+    }
+
+    private void copy(Class<?> clazz) throws IOException {
+        final String name = clazz.getName().replace('.', '/') + ".class";
+        final InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+        final OutputStream out = new FileOutputStream(new File(dir, name));
+        try {
+            final byte[] buffer = new byte[1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            out.close();
+            in.close();
+        }
+    }
+}
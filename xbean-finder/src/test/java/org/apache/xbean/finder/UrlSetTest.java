@@ -28,6 +28,29 @@ import java.util.Properties;
  */
 public class UrlSetTest extends TestCase {
 
+    public void testRelative() throws Exception {
+        if (System.getProperty("os.name").toLowerCase().contains("win")) { // the paths are unix ones
+            return;
+        }
+
+        UrlSet urlSet = new UrlSet(
+                new URL("file:///opt/app/lib/a.jar"),
+                new URL("jar:file:/opt/app/lib/b.jar!/"),
+                new URL("file:/opt/app/libs/c.jar"),
+                new URL("jar:file:///opt/other/d.jar!/"),
+                new URL("file:/opt/app/classes/"));
+
+        // /opt/app/lib does not exist, it is a string prefix and not a directory
+        assertEquals(3, urlSet.relative(new File("/opt/app/lib")).size());
+        assertEquals(1, urlSet.relative(new File("/opt/other")).size());
+        assertEquals(0, urlSet.relative(new File("/opt/none")).size());
+
+        UrlSet excluded = urlSet.excludePaths("/opt/app/lib" + File.pathSeparator + "/opt/other");
+        assertEquals(1, excluded.size());
+        assertEquals(new URL("file:/opt/app/classes/"), excluded.getUrls().get(0));
+        assertEquals(4, urlSet.exclude(new File("/opt/app/classes")).size());
+    }
+
     public void testAll() throws Exception {
         final URL[] originalUrls = new URL[]{
                 new URL("file:/Users/dblevins/work/xbean/trunk/xbean-finder/target/classes/"),
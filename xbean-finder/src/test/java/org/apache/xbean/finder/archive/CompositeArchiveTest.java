@@ -18,8 +18,12 @@ package org.apache.xbean.finder.archive;
 
 import junit.framework.TestCase;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @version $Rev$ $Date$
@@ -76,6 +80,87 @@ public class CompositeArchiveTest extends TestCase {
         assertEquals(3, classes.size());
     }
 
+    public void testIndexedGetBytecode() throws Exception {
+        final CountingArchive first = new CountingArchive(Red.class, Green.class);
+        final CountingArchive second = new CountingArchive(Blue.class);
+        final CompositeArchive archive = new CompositeArchive(first, second);
+
+        assertNotNull(archive.getBytecode(Blue.class.getName()));
+        assertNotNull(archive.getBytecode(Blue.class.getName().replace('.', '/') + ".class"));
+        assertEquals(0, first.reads);
+        assertEquals(2, second.reads);
+
+        // not listed but still found by the archives, then remembered
+        assertNotNull(archive.getBytecode(Yellow.class.getName()));
+        assertNotNull(archive.getBytecode(Yellow.class.getName()));
+        assertEquals(2, first.reads);
+        assertEquals(2, second.reads);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                archive.getBytecode("Fake");
+                fail("ClassNotFoundException should have been thrown");
+            } catch (ClassNotFoundException e) {
+                // pass
+            }
+        }
+        assertEquals(4, first.reads);
+        assertEquals(4, second.reads);
+    }
+
+    public void testOwnerNotFound() throws Exception {
+        final CountingArchive first = new CountingArchive(Blue.class) {
+            @Override
+            public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+                super.getBytecode(className);
+                throw new ClassNotFoundException(className);
+            }
+        };
+        final CountingArchive second = new CountingArchive(Blue.class);
+        final CompositeArchive archive = new CompositeArchive(first, second);
+
+        assertNotNull(archive.getBytecode(Blue.class.getName()));
+        assertNotNull(archive.getBytecode(Blue.class.getName()));
+        assertEquals(1, first.reads);
+        assertEquals(2, second.reads);
+    }
+
+    public void testArchivesReadOnly() throws Exception {
+        try {
+            archive.getArchives().clear();
+            fail("UnsupportedOperationException should have been thrown");
+        } catch (UnsupportedOperationException e) {
+            // pass
+        }
+    }
+
+    public void testDuplicates() throws Exception {
+        final ClassesArchive first = new ClassesArchive(Red.class, Green.class);
+        final ClassesArchive second = new ClassesArchive(Blue.class, Red.class);
+        final ClassesArchive third = new ClassesArchive(Red.class, Green.class);
+        final CompositeArchive archive = new CompositeArchive(first, second, third);
+
+        final Map<String, List<Archive>> duplicates = archive.getDuplicates();
+        assertEquals(2, duplicates.size());
+        assertEquals(Arrays.<Archive>asList(first, second, third), duplicates.get(Red.class.getName()));
+        assertEquals(Arrays.<Archive>asList(first, third), duplicates.get(Green.class.getName()));
+
+        assertTrue(this.archive.getDuplicates().isEmpty());
+    }
+
+    public static class CountingArchive extends ClassesArchive {
+        private int reads;
+
+        public CountingArchive(Class<?>... classes) {
+            super(classes);
+        }
+
+        @Override
+        public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+            reads++;
+            return super.getBytecode(className);
+        }
+    }
 
     public static class Red {
     }
@@ -86,4 +171,7 @@ public class CompositeArchiveTest extends TestCase {
     public static class Blue {
     }
 
+    public static class Yellow {
+    }
+
 }
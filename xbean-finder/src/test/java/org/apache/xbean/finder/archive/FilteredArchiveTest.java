@@ -18,6 +18,7 @@ package org.apache.xbean.finder.archive;
 
 import junit.framework.TestCase;
 import org.apache.xbean.finder.filter.Filter;
+import org.apache.xbean.finder.filter.Filters;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -49,6 +50,20 @@ public class FilteredArchiveTest extends TestCase {
         assertEquals(0, list.size());
     }
 
+    public void testFilterPackages() throws Exception {
+        final Filter packages = Filters.packages("org.apache.xbean.asm.commons", "org.acme", "org.apache.xbean.recipe");
+        final Filter unoptimized = new Filter() {
+            public boolean accept(String name) {
+                return packages.accept(name);
+            }
+        };
+
+        List<String> list = list(new FilteredArchive(archive, packages));
+
+        assertEquals(18, list.size());
+        assertEquals(list(new FilteredArchive(archive, unoptimized)), list);
+    }
+
     public static void assertEquals(Iterable<Archive.Entry> expectedList, Iterable<Archive.Entry> actualList) {
         final Iterator<Archive.Entry> expected = expectedList.iterator();
         final Iterator<Archive.Entry> actual = actualList.iterator();
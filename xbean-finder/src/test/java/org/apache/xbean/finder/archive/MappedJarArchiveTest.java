@@ -0,0 +1,205 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.AnnotationFinder;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class MappedJarArchiveTest {
+
+    private static final Class[] classes = {Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Green.Emerald.class, Red.class, Red.CandyApple.class, Red.Pink.class};
+    private static File classpath;
+    private MappedJarArchive archive;
+
+    @BeforeClass
+    public static void classSetUp() throws Exception {
+
+        classpath = Archives.jarArchive(classes);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+
+        URL[] urls = {new URL("jar:" + classpath.toURI().toURL() + "!/")};
+
+        archive = new MappedJarArchive(new URLClassLoader(urls), urls[0]);
+    }
+
+
+    @Test
+    public void testGetBytecode() throws Exception {
+
+        for (Class clazz : classes) {
+            assertNotNull(clazz.getName(), archive.getBytecode(clazz.getName()));
+        }
+
+        try {
+            archive.getBytecode("Fake");
+            fail("ClassNotFoundException should have been thrown");
+        } catch (ClassNotFoundException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testSameBytecodeAsJarArchive() throws Exception {
+        final URL url = classpath.toURI().toURL();
+        final JarArchive jarArchive = new JarArchive(new URLClassLoader(new URL[]{url}), url);
+
+        for (Class clazz : classes) {
+            assertTrue(clazz.getName(), Arrays.equals(read(jarArchive.getBytecode(clazz.getName())), read(archive.getBytecode(clazz.getName()))));
+        }
+    }
+
+    @Test
+    public void testStoredEntries() throws Exception {
+        final File jar = File.createTempFile("stored", ".jar");
+        jar.deleteOnExit();
+
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        for (Class clazz : classes) {
+            final String name = clazz.getName().replace('.', '/') + ".class";
+            final byte[] bytes = read(clazz.getClassLoader().getResourceAsStream(name));
+
+            final CRC32 crc = new CRC32();
+            crc.update(bytes);
+
+            final ZipEntry entry = new ZipEntry(name);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(bytes.length);
+            entry.setCrc(crc.getValue());
+            out.putNextEntry(entry);
+            out.write(bytes);
+            out.closeEntry();
+        }
+        out.close();
+
+        final URL url = jar.toURI().toURL();
+        final MappedJarArchive stored = new MappedJarArchive(new URLClassLoader(new URL[]{url}), url);
+
+        for (Class clazz : classes) {
+            assertTrue(clazz.getName(), Arrays.equals(read(archive.getBytecode(clazz.getName())), read(stored.getBytecode(clazz.getName()))));
+        }
+    }
+
+    @Test
+    public void testGetResource() throws Exception {
+        assertNotNull(archive.getResource("org/acme/foo/Red.class"));
+        assertNull(archive.getResource("org/acme/foo/Fake.class"));
+    }
+
+    @Test
+    public void testLoadClass() throws Exception {
+        for (Class clazz : classes) {
+            assertEquals(clazz.getName(), clazz, archive.loadClass(clazz.getName()));
+        }
+
+        try {
+            archive.loadClass("Fake");
+            fail("ClassNotFoundException should have been thrown");
+        } catch (ClassNotFoundException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testIterator() throws Exception {
+        List<String> actual = new ArrayList<String>();
+        for (Archive.Entry entry : archive) {
+            actual.add(entry.getName());
+        }
+
+        assertFalse(0 == actual.size());
+
+        for (Class clazz : classes) {
+            assertTrue(clazz.getName(), actual.contains(clazz.getName()));
+        }
+
+        assertEquals(classes.length, actual.size());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        final InputStream in = archive.getBytecode(Blue.class.getName());
+        archive.close();
+        archive.close();
+
+        try {
+            archive.getBytecode(Red.class.getName());
+            fail("IOException should have been thrown");
+        } catch (IOException e) {
+            // pass
+        }
+
+        try {
+            in.read();
+            fail("IOException should have been thrown");
+        } catch (IOException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testFinder() throws Exception {
+        final AnnotationFinder finder = new AnnotationFinder(archive, false);
+
+        assertEquals(classes.length, finder.getAnnotatedClassNames().size());
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            final byte[] buffer = new byte[1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.util.ClassFileVersions;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class MultiReleaseJarArchiveTest {
+
+    private static File multiRelease;
+    private static File plain;
+
+    @BeforeClass
+    public static void classSetUp() throws Exception {
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(new Attributes.Name("Multi-Release"), "true");
+
+        multiRelease = File.createTempFile("multi release", ".jar");
+        write(new JarOutputStream(new BufferedOutputStream(new FileOutputStream(multiRelease)), manifest));
+
+        plain = File.createTempFile("plain", ".jar");
+        write(new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(plain))));
+    }
+
+    private static void write(ZipOutputStream out) throws IOException {
+        try {
+            put(out, "org/acme/foo/Green.class", Green.class);
+            put(out, "org/acme/foo/Blue.class", Blue.class);
+            put(out, "META-INF/versions/9/org/acme/foo/Blue.class", Red.class);
+            put(out, "META-INF/versions/11/org/acme/foo/Blue.class", Green.class);
+            put(out, "META-INF/versions/11/org/acme/foo/Red.class", Red.class);
+            put(out, "META-INF/versions/99/org/acme/foo/Blue.class", Blue.class);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void put(ZipOutputStream out, String name, Class<?> clazz) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(bytes(clazz.getClassLoader().getResourceAsStream(clazz.getName().replace('.', '/') + ".class")));
+        out.closeEntry();
+    }
+
+    private static byte[] bytes(InputStream in) throws IOException {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static MultiReleaseJarArchive archive(File jar, int release) throws Exception {
+        final URL url = jar.toURI().toURL();
+        return new MultiReleaseJarArchive(new URLClassLoader(new URL[]{url}), url, release);
+    }
+
+    private static Set<String> names(Archive archive) {
+        final Set<String> names = new HashSet<String>();
+        for (Archive.Entry entry : archive) {
+            assertTrue(entry.getName(), names.add(entry.getName()));
+        }
+        return names;
+    }
+
+    private static Set<String> set(String... names) {
+        return new HashSet<String>(Arrays.asList(names));
+    }
+
+    @Test
+    public void testBaseRelease() throws Exception {
+        final MultiReleaseJarArchive archive = archive(multiRelease, 8);
+
+        assertTrue(archive.isMultiRelease());
+        assertEquals(set(Blue.class.getName(), Green.class.getName()), names(archive));
+        assertTrue(Arrays.equals(bytes(Blue.class.getClassLoader().getResourceAsStream("org/acme/foo/Blue.class")),
+                bytes(archive.getBytecode(Blue.class.getName()))));
+
+        try {
+            archive.getBytecode(Red.class.getName());
+            fail("ClassNotFoundException should have been thrown");
+        } catch (ClassNotFoundException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testVersionedEntries() throws Exception {
+        final MultiReleaseJarArchive archive = archive(multiRelease, 11);
+
+        assertEquals(set(Blue.class.getName(), Green.class.getName(), Red.class.getName()), names(archive));
+
+        // the highest version up to the release wins, the same entry is iterated
+        final byte[] green = bytes(archive.getBytecode(Green.class.getName()));
+        assertTrue(Arrays.equals(green, bytes(archive.getBytecode(Blue.class.getName()))));
+        assertTrue(Arrays.equals(green, bytes(archive.getBytecode("org/acme/foo/Blue.class"))));
+        for (Archive.Entry entry : archive) {
+            if (entry.getName().equals(Blue.class.getName())) {
+                assertTrue(Arrays.equals(green, bytes(entry.getBytecode())));
+            }
+        }
+
+        final MultiReleaseJarArchive nine = archive(multiRelease, 9);
+        assertEquals(set(Blue.class.getName(), Green.class.getName()), names(nine));
+        assertTrue(Arrays.equals(bytes(Red.class.getClassLoader().getResourceAsStream("org/acme/foo/Red.class")),
+                bytes(nine.getBytecode(Blue.class.getName()))));
+    }
+
+    @Test
+    public void testJarOrder() throws Exception {
+        final URL url = multiRelease.toURI().toURL();
+        final JarArchive jar = new JarArchive(new URLClassLoader(new URL[]{url}), url);
+
+        final List<String> expected = new ArrayList<String>();
+        for (Archive.Entry entry : jar) {
+            expected.add(entry.getName());
+        }
+        expected.add(Red.class.getName());
+
+        final List<String> actual = new ArrayList<String>();
+        for (Archive.Entry entry : archive(multiRelease, 11)) {
+            actual.add(entry.getName());
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testNotMultiRelease() throws Exception {
+        final MultiReleaseJarArchive archive = archive(plain, 11);
+
+        assertFalse(archive.isMultiRelease());
+        assertEquals(set(Blue.class.getName(), Green.class.getName()), names(archive));
+    }
+
+    @Test
+    public void testJarArchiveSkipsVersions() throws Exception {
+        final URL url = multiRelease.toURI().toURL();
+        final JarArchive archive = new JarArchive(new URLClassLoader(new URL[]{url}), url);
+
+        assertEquals(set(Blue.class.getName(), Green.class.getName()), names(archive));
+    }
+
+    @Test
+    public void testMappedJarArchiveSkipsVersions() throws Exception {
+        final URL url = multiRelease.toURI().toURL();
+        final MappedJarArchive archive = new MappedJarArchive(new URLClassLoader(new URL[]{url}), url);
+
+        assertEquals(set(Blue.class.getName(), Green.class.getName()), names(archive));
+    }
+
+    @Test
+    public void testRuntimeRelease() throws Exception {
+        assertTrue(MultiReleaseJarArchive.runtimeRelease() >= 5);
+    }
+
+    @Test
+    public void testDefaultReleaseReadable() throws Exception {
+        final URL url = multiRelease.toURI().toURL();
+        final MultiReleaseJarArchive archive = new MultiReleaseJarArchive(new URLClassLoader(new URL[]{url}), url);
+
+        assertEquals(Math.min(MultiReleaseJarArchive.runtimeRelease(), ClassFileVersions.maxRelease()), archive.getRelease());
+        assertTrue(ClassFileVersions.isReadable(archive.getRelease()));
+        assertTrue(ClassFileVersions.isReadable(8));
+        assertFalse(ClassFileVersions.isReadable(100));
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.archive;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.AnnotationFinder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class NestedJarArchiveTest {
+
+    private static final Class[] classes = {Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Green.Emerald.class, Red.class, Red.CandyApple.class, Red.Pink.class};
+    private static File war;
+
+    @BeforeClass
+    public static void classSetUp() throws Exception {
+        final byte[] colors = read(new FileInputStream(Archives.jarArchive(classes)));
+        final byte[] blue = read(new FileInputStream(Archives.jarArchive(Blue.class)));
+
+        war = File.createTempFile("nested", ".war");
+        war.deleteOnExit();
+
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(war));
+        out.putNextEntry(new ZipEntry("WEB-INF/web.xml"));
+        out.write("<web-app/>".getBytes());
+        out.closeEntry();
+
+        out.putNextEntry(new ZipEntry("WEB-INF/lib/colors.jar"));
+        out.write(colors);
+        out.closeEntry();
+
+        final CRC32 crc = new CRC32();
+        crc.update(blue);
+        final ZipEntry stored = new ZipEntry("WEB-INF/lib/blue.jar");
+        stored.setMethod(ZipEntry.STORED);
+        stored.setSize(blue.length);
+        stored.setCrc(crc.getValue());
+        out.putNextEntry(stored);
+        out.write(blue);
+        out.closeEntry();
+
+        out.close();
+    }
+
+    @Test
+    public void testDeflated() throws Exception {
+        final NestedJarArchive archive = new NestedJarArchive(getClass().getClassLoader(), war, "WEB-INF/lib/colors.jar");
+
+        for (Class clazz : classes) {
+            assertNotNull(clazz.getName(), archive.getBytecode(clazz.getName()));
+        }
+
+        assertEquals(classes.length, names(archive).size());
+        assertEquals(classes.length, new AnnotationFinder(archive, false).getAnnotatedClassNames().size());
+    }
+
+    @Test
+    public void testStored() throws Exception {
+        final NestedJarArchive archive = new NestedJarArchive(getClass().getClassLoader(), war, "WEB-INF/lib/blue.jar");
+
+        assertNotNull(archive.getBytecode(Blue.class.getName()));
+        assertEquals(1, names(archive).size());
+
+        try {
+            archive.getBytecode(Red.class.getName());
+            fail("ClassNotFoundException should have been thrown");
+        } catch (ClassNotFoundException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        for (String path : new String[]{"WEB-INF/lib/colors.jar", "WEB-INF/lib/blue.jar"}) {
+            final NestedJarArchive archive = new NestedJarArchive(getClass().getClassLoader(), war, path);
+            assertNotNull(archive.getBytecode(Blue.class.getName()));
+            archive.close();
+
+            try {
+                archive.getBytecode(Blue.class.getName());
+                fail("IOException should have been thrown");
+            } catch (IOException e) {
+                // pass
+            }
+        }
+    }
+
+    @Test
+    public void testArchives() throws Exception {
+        final List<Archive> archives = NestedJarArchive.archives(getClass().getClassLoader(), war, "WEB-INF/lib");
+
+        assertEquals(2, archives.size());
+        assertEquals(classes.length, names(new CompositeArchive(archives)).size() - 1);
+    }
+
+    @Test
+    public void testClasspathArchive() throws Exception {
+        final URL url = new URL("jar:" + war.toURI().toURL() + "!/WEB-INF/lib/colors.jar!/");
+
+        assertTrue(NestedJarArchive.isNested(url));
+
+        final Archive archive = ClasspathArchive.archive(getClass().getClassLoader(), url);
+        assertTrue(archive instanceof NestedJarArchive);
+        assertEquals(url, ((NestedJarArchive) archive).getUrl());
+        assertEquals(classes.length, names(archive).size());
+    }
+
+    private static List<String> names(Archive archive) {
+        final List<String> names = new ArrayList<String>();
+        for (Archive.Entry entry : archive) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            final byte[] buffer = new byte[1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+}
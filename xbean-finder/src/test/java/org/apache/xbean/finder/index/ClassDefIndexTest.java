@@ -0,0 +1,186 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.index;
+
+import org.acme.bar.Field;
+import org.acme.bar.FullyAnnotated;
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.AnnotationFinder;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.CompositeArchive;
+import org.apache.xbean.finder.archive.FilteredArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.apache.xbean.finder.filter.Filters;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ClassDefIndexTest {
+
+    private static final Class[] classes = {
+            Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Green.Emerald.class,
+            Red.class, Red.CandyApple.class, Red.Pink.class, FullyAnnotated.class
+    };
+
+    @Test
+    public void testReadFromIndex() throws Exception {
+        final File jar = Archives.jarArchive(classes);
+        final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        assertEquals(classes.length, ClassDefIndex.write(new JarArchive(getClass().getClassLoader(), jar.toURI().toURL()), index));
+
+        // a jar with the index and unreadable bytecode, any class found must come from the index
+        final JarArchive archive = new JarArchive(getClass().getClassLoader(), indexed(index.toByteArray(), classes).toURI().toURL());
+
+        final AnnotationFinder finder = new AnnotationFinder(archive, false);
+        assertEquals(classes.length, finder.getAnnotatedClassNames().size());
+        assertEquals(8, finder.findAnnotatedClasses(Color.class).size());
+        assertEquals(7, finder.findAnnotatedFields(Field.class).size());
+
+        final AnnotationFinder filtered = new AnnotationFinder(new FilteredArchive(new CompositeArchive(archive), Filters.packages("org.acme.bar")), false);
+        assertEquals(1, filtered.getAnnotatedClassNames().size());
+    }
+
+    @Test
+    public void testStaleIndex() throws Exception {
+        final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        ClassDefIndex.write(new JarArchive(getClass().getClassLoader(), Archives.jarArchive(Blue.class, Green.class).toURI().toURL()), index);
+
+        // the index does not list Red, the bytecode is scanned
+        final File jar = Archives.jarArchive(Blue.class, Green.class, Red.class);
+        final JarArchive archive = new JarArchive(getClass().getClassLoader(), jar.toURI().toURL());
+        final ByteArrayOutputStream scanned = new ByteArrayOutputStream();
+        ClassDefIndex.write(archive, scanned);
+        assertEquals(null, ClassDefIndex.read(new ByteArrayInputStream(index.toByteArray()), archive));
+        assertEquals(3, new AnnotationFinder(archive, false).findAnnotatedClasses(Color.class).size());
+
+        // the index lists classes the jar does not have
+        final File fewer = indexed(scanned.toByteArray(), Blue.class);
+        assertEquals(null, ClassDefIndex.read(new ByteArrayInputStream(scanned.toByteArray()), new JarArchive(getClass().getClassLoader(), fewer.toURI().toURL())));
+    }
+
+    @Test
+    public void testChangedClass() throws Exception {
+        final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        ClassDefIndex.write(new JarArchive(getClass().getClassLoader(), Archives.jarArchive(Blue.class, Green.class).toURI().toURL()), index);
+
+        // same names, but Green was rewritten after the index was built
+        final Map<String, String> entries = new HashMap<String, String>();
+        entries.put("org/acme/foo/Green.class", "changed");
+        final File jar = Archives.jarArchive(entries, Blue.class);
+        assertEquals(null, ClassDefIndex.read(new ByteArrayInputStream(index.toByteArray()), new JarArchive(getClass().getClassLoader(), jar.toURI().toURL())));
+    }
+
+    /**
+     * @return a jar with the index and entries of the classes holding no bytecode,
+     * recorded with the checksums of their real bytecode
+     */
+    private static File indexed(byte[] index, Class... classes) throws IOException {
+        final File indexed = File.createTempFile("indexed", ".jar");
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(indexed));
+        out.putNextEntry(new ZipEntry(ClassDefIndex.RESOURCE));
+        out.write(index);
+        out.closeEntry();
+        for (Class clazz : classes) {
+            out.putNextEntry(new ZipEntry(clazz.getName().replace('.', '/') + ".class"));
+            out.write(garbage(clazz));
+            out.closeEntry();
+        }
+        out.close();
+
+        // patch the checksums of the local and central headers
+        final byte[] zip = read(new FileInputStream(indexed));
+        for (Class clazz : classes) {
+            final String name = clazz.getName().replace('.', '/') + ".class";
+            replace(zip, crc(garbage(clazz)), crc(read(clazz.getClassLoader().getResourceAsStream(name))));
+        }
+        final FileOutputStream patched = new FileOutputStream(indexed);
+        try {
+            patched.write(zip);
+        } finally {
+            patched.close();
+        }
+        return indexed;
+    }
+
+    private static byte[] garbage(Class clazz) {
+        return ("not a class " + clazz.getName()).getBytes();
+    }
+
+    private static int crc(byte[] bytes) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static void replace(byte[] zip, int crc, int replacement) {
+        for (int i = 0; i + 4 <= zip.length; i++) {
+            if ((zip[i] & 0xFF | (zip[i + 1] & 0xFF) << 8 | (zip[i + 2] & 0xFF) << 16 | (zip[i + 3] & 0xFF) << 24) != crc) continue;
+            for (int j = 0; j < 4; j++) {
+                zip[i + j] = (byte) (replacement >>> (8 * j));
+            }
+        }
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testUnreadableClass() throws Exception {
+        final Map<String, String> entries = new HashMap<String, String>();
+        entries.put("org/acme/Broken.class", "not a class");
+        final File jar = Archives.jarArchive(entries, Blue.class);
+
+        try {
+            ClassDefIndex.write(new JarArchive(getClass().getClassLoader(), jar.toURI().toURL()), new ByteArrayOutputStream());
+            fail("IOException should have been thrown");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("org.acme.Broken"));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.index;
+
+import org.acme.bar.Construct;
+import org.acme.bar.Field;
+import org.acme.bar.FullyAnnotated;
+import org.acme.bar.ParamB;
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.AnnotationFinder;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.CompositeArchive;
+import org.apache.xbean.finder.archive.FilteredArchive;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.apache.xbean.finder.filter.Filters;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ScanCacheTest {
+
+    private static final Class[] classes = {
+            Blue.class, Blue.Navy.class, Blue.Sky.class, Green.class, Green.Emerald.class,
+            Red.class, Red.CandyApple.class, Red.Pink.class, FullyAnnotated.class
+    };
+
+    private File jar;
+    private ClassLoader loader;
+    private ScanCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        jar = Archives.jarArchive(classes);
+        loader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, getClass().getClassLoader());
+
+        final File directory = File.createTempFile("scan", "cache");
+        assertTrue(directory.delete());
+        cache = new ScanCache(directory);
+    }
+
+    @Test
+    public void testRebuildFromCache() throws Exception {
+        final AnnotationFinder scanned = new AnnotationFinder(archive(), false);
+
+        new AnnotationFinder(archive(), false, null, cache);
+        assertNotNull(cache.load(jar));
+
+        final AnnotationFinder cached = new AnnotationFinder(archive(), false, null, cache);
+        assertEquals(new HashSet<String>(scanned.getAnnotatedClassNames()), new HashSet<String>(cached.getAnnotatedClassNames()));
+        assertEquals(8, cached.findAnnotatedClasses(Color.class).size());
+        assertEquals(7, cached.findAnnotatedFields(Field.class).size());
+        assertEquals(1, cached.findAnnotatedConstructors(Construct.class).size());
+        assertEquals(1, cached.findAnnotatedMethodParameters(ParamB.class).size());
+        assertEquals(1, cached.findAnnotatedConstructorParameters(ParamB.class).size());
+    }
+
+    @Test
+    public void testChangedJar() throws Exception {
+        new AnnotationFinder(archive(), false, null, cache);
+        assertNotNull(cache.load(jar));
+
+        assertTrue(jar.setLastModified(jar.lastModified() - 60000));
+        assertNull(cache.load(jar));
+    }
+
+    @Test
+    public void testFilteredArchive() throws Exception {
+        final Archive filtered = new FilteredArchive(new CompositeArchive(archive()), Filters.classes(Red.class.getName()));
+
+        final AnnotationFinder scanned = new AnnotationFinder(filtered, false, null, cache);
+        assertEquals(1, scanned.getAnnotatedClassNames().size());
+
+        // the cache holds the whole jar, the filter is applied when the index is rebuilt
+        final AnnotationFinder cached = new AnnotationFinder(filtered, false, null, cache);
+        assertEquals(1, cached.getAnnotatedClassNames().size());
+
+        final AnnotationFinder all = new AnnotationFinder(archive(), false, null, cache);
+        assertEquals(classes.length, all.getAnnotatedClassNames().size());
+    }
+
+    private JarArchive archive() throws Exception {
+        return new JarArchive(loader, jar.toURI().toURL());
+    }
+}
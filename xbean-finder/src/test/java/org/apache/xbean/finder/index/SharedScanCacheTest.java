@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.xbean.finder.index;
+
+import org.acme.foo.Blue;
+import org.acme.foo.Color;
+import org.acme.foo.Green;
+import org.acme.foo.Red;
+import org.apache.xbean.finder.AnnotationFinder;
+import org.apache.xbean.finder.archive.Archives;
+import org.apache.xbean.finder.archive.JarArchive;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class SharedScanCacheTest {
+
+    private static final Class[] classes = {Blue.class, Blue.Navy.class, Green.class, Red.class};
+
+    private File jar;
+    private File copy;
+    private SharedScanCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        jar = Archives.jarArchive(classes);
+        copy = File.createTempFile("copy", ".jar");
+        copy.deleteOnExit();
+        copy(jar, copy);
+        cache = new SharedScanCache(null);
+    }
+
+    @Test
+    public void testSameContentSharesEntry() throws Exception {
+        assertNull(cache.load(jar));
+
+        final AnnotationFinder first = new AnnotationFinder(archive(jar), false, null, cache);
+        assertEquals(1, cache.size());
+
+        // a second deployment of the same library, in another location
+        final byte[] recorded = cache.load(jar);
+        assertNotNull(recorded);
+        assertSame(recorded, cache.load(copy));
+
+        final AnnotationFinder second = new AnnotationFinder(archive(copy), false, null, cache);
+        assertEquals(1, cache.size());
+        assertEquals(first.findAnnotatedClasses(Color.class).size(), second.findAnnotatedClasses(Color.class).size());
+    }
+
+    @Test
+    public void testChangedContent() throws Exception {
+        new AnnotationFinder(archive(jar), false, null, cache);
+
+        final File other = Archives.jarArchive(new Class[]{Blue.class});
+        copy(other, copy);
+
+        assertNull(cache.load(copy));
+        new AnnotationFinder(archive(copy), false, null, cache);
+        assertEquals(2, cache.size());
+        assertNotSame(cache.load(jar), cache.load(copy));
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        new AnnotationFinder(archive(jar), false, null, cache);
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertNull(cache.load(jar));
+    }
+
+    private JarArchive archive(File file) throws Exception {
+        final URL url = file.toURI().toURL();
+        return new JarArchive(new URLClassLoader(new URL[]{url}, getClass().getClassLoader()), url);
+    }
+
+    private static void copy(File from, File to) throws Exception {
+        final InputStream in = new FileInputStream(from);
+        try {
+            final OutputStream out = new FileOutputStream(to);
+            try {
+                final byte[] buffer = new byte[4096];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+}